@@ -0,0 +1,97 @@
+package com.cloudbees.groovy.cps.benchmark;
+
+import groovy.lang.Closure;
+import groovy.lang.Script;
+import java.util.List;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+
+/**
+ * Checks every intercepted call against a fixed list of permitted packages, standing in for the whitelist
+ * the plugin consults, so that sandboxed benchmarks pay for an actual permission check on each call.
+ */
+final class AllowlistInterceptor extends GroovyInterceptor {
+
+    private static final List<String> PACKAGES = List.of("java.lang.", "java.util.", "groovy.lang.");
+
+    private static void check(Class<?> type) {
+        if (Script.class.isAssignableFrom(type) || Closure.class.isAssignableFrom(type)) {
+            return;
+        }
+        String name = type.getName();
+        for (String p : PACKAGES) {
+            if (name.startsWith(p)) {
+                return;
+            }
+        }
+        throw new SecurityException("Rejected access to " + name);
+    }
+
+    private static void check(Object receiver) {
+        if (receiver instanceof Class) {
+            check((Class<?>) receiver);
+        } else if (receiver != null) {
+            check(receiver.getClass());
+        }
+    }
+
+    @Override
+    public Object onMethodCall(Invoker invoker, Object receiver, String method, Object... args) throws Throwable {
+        check(receiver);
+        return super.onMethodCall(invoker, receiver, method, args);
+    }
+
+    @Override
+    public Object onStaticCall(Invoker invoker, Class receiver, String method, Object... args) throws Throwable {
+        check(receiver);
+        return super.onStaticCall(invoker, receiver, method, args);
+    }
+
+    @Override
+    public Object onNewInstance(Invoker invoker, Class receiver, Object... args) throws Throwable {
+        check(receiver);
+        return super.onNewInstance(invoker, receiver, args);
+    }
+
+    @Override
+    public Object onSuperCall(Invoker invoker, Class senderType, Object receiver, String method, Object... args)
+            throws Throwable {
+        check(senderType);
+        return super.onSuperCall(invoker, senderType, receiver, method, args);
+    }
+
+    @Override
+    public Object onGetProperty(Invoker invoker, Object receiver, String property) throws Throwable {
+        check(receiver);
+        return super.onGetProperty(invoker, receiver, property);
+    }
+
+    @Override
+    public Object onSetProperty(Invoker invoker, Object receiver, String property, Object value) throws Throwable {
+        check(receiver);
+        return super.onSetProperty(invoker, receiver, property, value);
+    }
+
+    @Override
+    public Object onGetAttribute(Invoker invoker, Object receiver, String attribute) throws Throwable {
+        check(receiver);
+        return super.onGetAttribute(invoker, receiver, attribute);
+    }
+
+    @Override
+    public Object onSetAttribute(Invoker invoker, Object receiver, String attribute, Object value) throws Throwable {
+        check(receiver);
+        return super.onSetAttribute(invoker, receiver, attribute, value);
+    }
+
+    @Override
+    public Object onGetArray(Invoker invoker, Object receiver, Object index) throws Throwable {
+        check(receiver);
+        return super.onGetArray(invoker, receiver, index);
+    }
+
+    @Override
+    public Object onSetArray(Invoker invoker, Object receiver, Object index, Object value) throws Throwable {
+        check(receiver);
+        return super.onSetArray(invoker, receiver, index, value);
+    }
+}
@@ -0,0 +1,25 @@
+package com.cloudbees.groovy.cps.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line (all by default) with the same options as JMH itself,
+ * additionally reporting allocation rates.
+ *
+ * <pre>
+ * mvn -Pbenchmarks -pl benchmarks -am package -DskipTests
+ * java -jar benchmarks/target/benchmarks.jar [JMH options]
+ * </pre>
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                        .parent(new CommandLineOptions(args))
+                        .addProfiler(GCProfiler.class)
+                        .build())
+                .run();
+    }
+}
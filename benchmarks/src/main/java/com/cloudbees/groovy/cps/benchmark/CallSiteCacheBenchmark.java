@@ -0,0 +1,56 @@
+package com.cloudbees.groovy.cps.benchmark;
+
+import com.cloudbees.groovy.cps.sandbox.CallSiteCache;
+import groovy.lang.Script;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares trusted method dispatch with and without {@link CallSiteCache}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CallSiteCacheBenchmark {
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private boolean wasEnabled;
+    private CpsScripts scripts;
+    private Script calls;
+
+    @Setup
+    public void setUp() {
+        wasEnabled = CallSiteCache.ENABLED;
+        CallSiteCache.ENABLED = cache;
+        scripts = new CpsScripts(false);
+        calls = scripts.parse(
+                "def s = 'abc'; int n = 0; for (int i = 0; i < 1000; i++) { n += s.length() + s.indexOf('c') + Math.max(i, 1) }; n");
+    }
+
+    @TearDown
+    public void tearDown() {
+        scripts.close();
+        CallSiteCache.ENABLED = wasEnabled;
+    }
+
+    @Benchmark
+    public Object calls() throws Throwable {
+        return scripts.run(calls);
+    }
+}
@@ -0,0 +1,75 @@
+package com.cloudbees.groovy.cps.benchmark;
+
+import com.cloudbees.groovy.cps.Continuable;
+import com.cloudbees.groovy.cps.Continuation;
+import com.cloudbees.groovy.cps.CpsTransformer;
+import com.cloudbees.groovy.cps.Envs;
+import com.cloudbees.groovy.cps.Next;
+import com.cloudbees.groovy.cps.Outcome;
+import com.cloudbees.groovy.cps.SandboxCpsTransformer;
+import com.cloudbees.groovy.cps.SerializableScript;
+import com.cloudbees.groovy.cps.impl.CpsCallableInvocation;
+import com.cloudbees.groovy.cps.sandbox.Invoker;
+import com.cloudbees.groovy.cps.sandbox.SandboxInvoker;
+import groovy.lang.Closure;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.GroovyCategorySupport;
+import org.kohsuke.groovy.sandbox.GroovyInterceptor;
+
+/**
+ * Compiles and runs CPS-transformed scripts the way the plugin does, either trusted or sandboxed.
+ * Interceptors are registered per thread, so a sandboxed instance must be created and used on the same thread,
+ * and {@linkplain #close closed} there too.
+ */
+final class CpsScripts implements AutoCloseable {
+    private final GroovyShell shell;
+    private final Invoker invoker;
+    private final GroovyInterceptor interceptor; // null when trusted
+
+    CpsScripts(boolean sandboxed) {
+        CompilerConfiguration cc = new CompilerConfiguration();
+        cc.addCompilationCustomizers(sandboxed ? new SandboxCpsTransformer() : new CpsTransformer());
+        cc.setScriptBaseClass(SerializableScript.class.getName());
+        shell = new GroovyShell(cc);
+        invoker = sandboxed ? new SandboxInvoker() : Invoker.INSTANCE;
+        interceptor = sandboxed ? new AllowlistInterceptor() : null;
+        if (interceptor != null) {
+            // parse instantiates the sandbox-transformed script, so this must be in place before then
+            interceptor.register();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (interceptor != null) {
+            interceptor.unregister();
+        }
+    }
+
+    Script parse(String text) {
+        return shell.parse(text);
+    }
+
+    /**
+     * Runs the script to completion through the CPS interpreter.
+     */
+    Object run(Script script) throws Throwable {
+        Next start;
+        try {
+            script.run();
+            throw new IllegalStateException(script + " is not CPS-transformed");
+        } catch (CpsCallableInvocation inv) {
+            start = inv.invoke(Envs.empty(invoker), null, Continuation.HALT);
+        }
+        // the plugin applies these categories once per CPS VM thread; here they are applied per run
+        return GroovyCategorySupport.use(Continuable.categories, new Closure<Outcome>(null) {
+                    @Override
+                    public Outcome call() {
+                        return start.run().yield;
+                    }
+                })
+                .replay();
+    }
+}
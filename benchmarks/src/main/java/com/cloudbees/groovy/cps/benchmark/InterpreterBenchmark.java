@@ -0,0 +1,102 @@
+package com.cloudbees.groovy.cps.benchmark;
+
+import groovy.lang.Script;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs typical Pipeline script constructs through the CPS interpreter, trusted and sandboxed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpreterBenchmark {
+
+    @Param({"trusted", "sandboxed"})
+    public String mode;
+
+    private CpsScripts scripts;
+    private Script loop;
+    private Script methodCalls;
+    private Script closures;
+    private Script each;
+    private Script collect;
+    private Script sort;
+    private Script exceptions;
+    private Script recursion;
+
+    @Setup
+    public void setUp() {
+        scripts = new CpsScripts(mode.equals("sandboxed"));
+        loop = scripts.parse("int sum = 0; for (int i = 0; i < 1000; i++) { sum += i }; sum");
+        methodCalls = scripts.parse(
+                "def add(a, b) { a + b }; def sum = 0; for (int i = 0; i < 1000; i++) { sum = add(sum, i) }; sum");
+        closures = scripts.parse(
+                "def twice = { x -> x * 2 }; int sum = 0; for (int i = 0; i < 1000; i++) { sum += twice(i) }; sum");
+        each = scripts.parse("int sum = 0; (0..<1000).toList().each { sum += it }; sum");
+        collect = scripts.parse("(0..<1000).toList().collect { it * 2 }.size()");
+        sort = scripts.parse("(0..<1000).toList().collect { (it * 7919) % 1000 }.sort { a, b -> a <=> b }.size()");
+        exceptions = scripts.parse(
+                "int caught = 0; for (int i = 0; i < 100; i++) { try { throw new IllegalStateException('x') } catch (IllegalStateException e) { caught++ } }; caught");
+        recursion = scripts.parse("def depth(n) { n == 0 ? 0 : 1 + depth(n - 1) }; depth(1000)");
+    }
+
+    @TearDown
+    public void tearDown() {
+        scripts.close();
+    }
+
+    @Benchmark
+    public Object loop() throws Throwable {
+        return scripts.run(loop);
+    }
+
+    @Benchmark
+    public Object methodCalls() throws Throwable {
+        return scripts.run(methodCalls);
+    }
+
+    @Benchmark
+    public Object closures() throws Throwable {
+        return scripts.run(closures);
+    }
+
+    @Benchmark
+    public Object each() throws Throwable {
+        return scripts.run(each);
+    }
+
+    @Benchmark
+    public Object collect() throws Throwable {
+        return scripts.run(collect);
+    }
+
+    @Benchmark
+    public Object sort() throws Throwable {
+        return scripts.run(sort);
+    }
+
+    @Benchmark
+    public Object exceptions() throws Throwable {
+        return scripts.run(exceptions);
+    }
+
+    @Benchmark
+    public Object recursion() throws Throwable {
+        return scripts.run(recursion);
+    }
+}
@@ -183,12 +183,25 @@ public class CpsTransformer extends CompilationCustomizer implements GroovyCodeV
 
     /**
      * Should this method be transformed?
+     *
+     * <p>
+     * If {@link TransformerConfiguration#isNonCpsInference} is enabled, methods which provably
+     * can never suspend are left alone just as if they were annotated with {@link NonCPS}.
      */
     protected boolean shouldBeTransformed(MethodNode node) {
-        return !node.isSynthetic()
-                && !hasAnnotation(node, NonCPS.class)
-                && !hasAnnotation(node, WorkflowTransformed.class)
-                && !node.isAbstract();
+        if (node.isSynthetic()
+                || hasAnnotation(node, NonCPS.class)
+                || hasAnnotation(node, WorkflowTransformed.class)
+                || node.isAbstract()) {
+            return false;
+        }
+        if (config.isNonCpsInference() && NonSuspendingMethodAnalyzer.isNonSuspending(node)) {
+            LOGGER.log(Level.FINE, "in {0} treating {1} as @NonCPS since it can never suspend", new Object[] {
+                node.getDeclaringClass().getName(), node.getTypeDescriptor()
+            });
+            return false;
+        }
+        return true;
     }
 
     boolean hasAnnotation(MethodNode node, Class<? extends Annotation> a) {
@@ -0,0 +1,350 @@
+package com.cloudbees.groovy.cps;
+
+import static org.codehaus.groovy.syntax.Types.*;
+
+import java.lang.reflect.Modifier;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.Variable;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.ast.stmt.DoWhileStatement;
+import org.codehaus.groovy.ast.stmt.ForStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.ast.stmt.SwitchStatement;
+import org.codehaus.groovy.ast.stmt.SynchronizedStatement;
+import org.codehaus.groovy.ast.stmt.WhileStatement;
+
+/**
+ * Conservatively decides whether a method can be compiled as if it were {@link NonCPS}
+ * without changing its behavior.
+ *
+ * <p>
+ * A method qualifies only if its body can never end up calling CPS-transformed code directly
+ * and always runs for a bounded amount of time. So it may not contain loops, closures, {@code switch},
+ * or {@code synchronized} blocks, and it may only dispatch methods, operators, and property accesses
+ * to objects whose type is known to be a final JDK class (such as {@link String} or {@link Integer}),
+ * or to static members of JDK classes. Anything else, notably calls on {@code this},
+ * on dynamically typed variables, or on script binding variables, disqualifies the method.
+ * Arguments to such calls must be constants or local variables of such types too,
+ * since a JDK or {@code DefaultGroovyMethods} method given a {@link groovy.lang.Closure},
+ * as in {@code n.times(body)}, would call it from non-CPS code.
+ *
+ * <p>
+ * Calls which are synchronous even in CPS-transformed code, such as constructors, equality
+ * and comparison operators, casts, and {@code GString} rendering, are allowed.
+ *
+ * @see CpsTransformer#shouldBeTransformed(MethodNode)
+ */
+final class NonSuspendingMethodAnalyzer extends CodeVisitorSupport {
+
+    private boolean suspendable;
+
+    private NonSuspendingMethodAnalyzer() {}
+
+    /**
+     * @return true if the method body was proven to never suspend
+     */
+    static boolean isNonSuspending(MethodNode m) {
+        Statement code = m.getCode();
+        if (code == null) {
+            return false;
+        }
+        if (m.getDeclaringClass().isScript()
+                && m.getName().equals("run")
+                && m.getParameters().length == 0) {
+            return false; // the script body is what Continuable starts from
+        }
+        NonSuspendingMethodAnalyzer a = new NonSuspendingMethodAnalyzer();
+        code.visit(a);
+        return !a.suspendable;
+    }
+
+    private void reject() {
+        suspendable = true;
+    }
+
+    /**
+     * Is the value of this expression guaranteed to be an instance of a final JDK class (or a primitive)?
+     */
+    private static boolean isOfSafeType(Expression e) {
+        if (e instanceof ConstantExpression) {
+            Object v = ((ConstantExpression) e).getValue();
+            return v != null && isSafeClass(v.getClass());
+        }
+        if (e instanceof VariableExpression) {
+            VariableExpression ve = (VariableExpression) e;
+            return isLocalVariable(ve) && isSafeType(ve.getOriginType());
+        }
+        return false;
+    }
+
+    /**
+     * Are all the arguments to a call constants or {@linkplain #isOfSafeType of a safe type}?
+     * Notably this excludes {@link groovy.lang.Closure}s, as well as named arguments.
+     */
+    private static boolean hasSafeArguments(Expression arguments) {
+        if (!(arguments instanceof TupleExpression)) {
+            return false;
+        }
+        for (Expression arg : ((TupleExpression) arguments).getExpressions()) {
+            boolean nullConstant = arg instanceof ConstantExpression && ((ConstantExpression) arg).isNullExpression();
+            if (!nullConstant && !isOfSafeType(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSafeType(ClassNode t) {
+        if (ClassHelper.isPrimitiveType(t)) {
+            return true;
+        }
+        if (!t.isResolved() || t.isPrimaryClassNode() || t.isArray() || t.isGenericsPlaceHolder()) {
+            return false;
+        }
+        return isSafeClass(t.getTypeClass());
+    }
+
+    private static boolean isSafeClass(Class<?> c) {
+        return Modifier.isFinal(c.getModifiers()) && c.getClassLoader() == null;
+    }
+
+    /**
+     * Is this a reference to a JDK class, so that static members may be used?
+     */
+    private static boolean isJdkClass(Expression e) {
+        if (!(e instanceof ClassExpression)) {
+            return false;
+        }
+        ClassNode t = e.getType();
+        return t.isResolved() && !t.isPrimaryClassNode() && t.getTypeClass().getClassLoader() == null;
+    }
+
+    private static boolean isLocalVariable(Expression e) {
+        if (!(e instanceof VariableExpression)) {
+            return false;
+        }
+        VariableExpression ve = (VariableExpression) e;
+        if (ve.isThisExpression() || ve.isSuperExpression()) {
+            return false;
+        }
+        Variable v = ve.getAccessedVariable();
+        return v instanceof Parameter || v instanceof VariableExpression;
+    }
+
+    @Override
+    public void visitForLoop(ForStatement loop) {
+        reject();
+    }
+
+    @Override
+    public void visitWhileLoop(WhileStatement loop) {
+        reject();
+    }
+
+    @Override
+    public void visitDoWhileLoop(DoWhileStatement loop) {
+        reject();
+    }
+
+    @Override
+    public void visitSwitch(SwitchStatement statement) {
+        reject();
+    }
+
+    @Override
+    public void visitSynchronizedStatement(SynchronizedStatement sync) {
+        reject();
+    }
+
+    @Override
+    public void visitClosureExpression(ClosureExpression expression) {
+        reject();
+    }
+
+    @Override
+    public void visitClosureListExpression(ClosureListExpression cle) {
+        reject();
+    }
+
+    @Override
+    public void visitMethodPointerExpression(MethodPointerExpression expression) {
+        reject();
+    }
+
+    @Override
+    public void visitSpreadExpression(SpreadExpression expression) {
+        reject();
+    }
+
+    @Override
+    public void visitSpreadMapExpression(SpreadMapExpression expression) {
+        reject();
+    }
+
+    @Override
+    public void visitStaticMethodCallExpression(StaticMethodCallExpression call) {
+        reject();
+    }
+
+    @Override
+    public void visitFieldExpression(FieldExpression expression) {
+        reject();
+    }
+
+    @Override
+    public void visitVariableExpression(VariableExpression expression) {
+        if (!expression.isThisExpression() && !expression.isSuperExpression() && !isLocalVariable(expression)) {
+            // a property of this object or a binding variable, which may be a global variable
+            reject();
+        }
+    }
+
+    @Override
+    public void visitMethodCallExpression(MethodCallExpression call) {
+        Expression receiver = call.getObjectExpression();
+        if (call.isImplicitThis()
+                || call.isSpreadSafe()
+                || call.getMethodAsString() == null
+                || !(isOfSafeType(receiver) || isJdkClass(receiver))
+                || !hasSafeArguments(call.getArguments())) {
+            reject();
+            return;
+        }
+        if (!(receiver instanceof ClassExpression)) {
+            receiver.visit(this);
+        }
+        call.getArguments().visit(this);
+    }
+
+    @Override
+    public void visitConstructorCallExpression(ConstructorCallExpression call) {
+        if (call.isSpecialCall() || call.isUsingAnonymousInnerClass()) {
+            reject();
+            return;
+        }
+        super.visitConstructorCallExpression(call);
+    }
+
+    @Override
+    public void visitPropertyExpression(PropertyExpression expression) {
+        visitPropertyish(expression);
+    }
+
+    @Override
+    public void visitAttributeExpression(AttributeExpression expression) {
+        visitPropertyish(expression);
+    }
+
+    private void visitPropertyish(PropertyExpression expression) {
+        Expression receiver = expression.getObjectExpression();
+        if (expression.isSpreadSafe()
+                || expression.getPropertyAsString() == null
+                || !(isOfSafeType(receiver) || isJdkClass(receiver))) {
+            reject();
+            return;
+        }
+        if (!(receiver instanceof ClassExpression)) {
+            receiver.visit(this);
+        }
+    }
+
+    @Override
+    public void visitBinaryExpression(BinaryExpression expression) {
+        Expression left = expression.getLeftExpression();
+        Expression right = expression.getRightExpression();
+        int op = expression.getOperation().getType();
+        switch (op) {
+            case ASSIGN:
+                if (!isAssignable(left)) {
+                    reject();
+                    return;
+                }
+                right.visit(this);
+                return;
+            case COMPARE_EQUAL:
+            case COMPARE_NOT_EQUAL:
+            case COMPARE_LESS_THAN:
+            case COMPARE_LESS_THAN_EQUAL:
+            case COMPARE_GREATER_THAN:
+            case COMPARE_GREATER_THAN_EQUAL:
+            case COMPARE_TO:
+            case LOGICAL_AND:
+            case LOGICAL_OR:
+            case KEYWORD_INSTANCEOF:
+            case FIND_REGEX:
+            case MATCH_REGEX:
+                // dispatched through ScriptBytecodeAdapter synchronously even in CPS-transformed code
+                break;
+            case KEYWORD_IN:
+                if (!isOfSafeType(right)) {
+                    reject(); // isCase
+                    return;
+                }
+                break;
+            default:
+                if (!isOfSafeType(left) || (ofType(op, ASSIGNMENT_OPERATOR) && !isLocalVariable(left))) {
+                    reject(); // an operator method such as plus or getAt, or a compound assignment
+                    return;
+                }
+        }
+        left.visit(this);
+        right.visit(this);
+    }
+
+    private static boolean isAssignable(Expression left) {
+        if (left instanceof TupleExpression) { // multiple assignment
+            for (Expression e : ((TupleExpression) left).getExpressions()) {
+                if (!isLocalVariable(e)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return isLocalVariable(left);
+    }
+
+    @Override
+    public void visitPrefixExpression(PrefixExpression expression) {
+        if (!isLocalVariable(expression.getExpression()) || !isOfSafeType(expression.getExpression())) {
+            reject(); // next or previous
+        }
+    }
+
+    @Override
+    public void visitPostfixExpression(PostfixExpression expression) {
+        if (!isLocalVariable(expression.getExpression()) || !isOfSafeType(expression.getExpression())) {
+            reject(); // next or previous
+        }
+    }
+
+    @Override
+    public void visitUnaryMinusExpression(UnaryMinusExpression expression) {
+        if (!isOfSafeType(expression.getExpression())) {
+            reject(); // negative
+            return;
+        }
+        super.visitUnaryMinusExpression(expression);
+    }
+
+    @Override
+    public void visitUnaryPlusExpression(UnaryPlusExpression expression) {
+        if (!isOfSafeType(expression.getExpression())) {
+            reject(); // positive
+            return;
+        }
+        super.visitUnaryPlusExpression(expression);
+    }
+
+    @Override
+    public void visitBitwiseNegationExpression(BitwiseNegationExpression expression) {
+        if (!isOfSafeType(expression.getExpression())) {
+            reject(); // bitwiseNegate
+            return;
+        }
+        super.visitBitwiseNegationExpression(expression);
+    }
+}
@@ -15,6 +15,7 @@ import org.codehaus.groovy.ast.ClassNode;
 public class TransformerConfiguration {
     private ClassNode closureType = new ClassNode(CpsClosure.class);
     private List<Safepoint> safepoints = new ArrayList<>();
+    private boolean nonCpsInference;
 
     public ClassNode getClosureType() {
         return closureType;
@@ -24,6 +25,10 @@ public class TransformerConfiguration {
         return safepoints;
     }
 
+    public boolean isNonCpsInference() {
+        return nonCpsInference;
+    }
+
     public TransformerConfiguration withClosureType(ClassNode closureType) {
         this.closureType = closureType;
         return this;
@@ -50,4 +55,17 @@ public class TransformerConfiguration {
         safepoints.add(new Safepoint(clazz, methodName));
         return this;
     }
+
+    /**
+     * Compiles methods that provably can never suspend as if they were annotated with {@link NonCPS}.
+     *
+     * <p>
+     * The analysis is conservative: only methods without loops or closures, which call nothing
+     * but methods of final JDK classes, are affected. Each such method is logged at {@code FINE}
+     * by {@link CpsTransformer}.
+     */
+    public TransformerConfiguration withNonCpsInference(boolean nonCpsInference) {
+        this.nonCpsInference = nonCpsInference;
+        return this;
+    }
 }
@@ -48,7 +48,9 @@ public class BlockScopeEnv extends ProxyEnv {
     }
 
     public Object getLocalVariable(String name) {
-        if (locals.containsKey(name)) return locals.get(name);
+        // a single lookup suffices unless the variable is unassigned or belongs to an outer scope
+        Object v = locals.get(name);
+        if (v != null || locals.containsKey(name)) return v;
         else return parent.getLocalVariable(name);
     }
 
@@ -65,8 +67,10 @@ public class BlockScopeEnv extends ProxyEnv {
     }
 
     public void setLocalVariable(String name, Object value) {
-        if (locals.containsKey(name)) locals.put(name, value);
-        else parent.setLocalVariable(name, value);
+        // replace only writes if the variable is declared here, sparing a separate containsKey in the common case
+        if (locals.isEmpty() || (locals.replace(name, value) == null && !locals.containsKey(name))) {
+            parent.setLocalVariable(name, value);
+        }
     }
 
     private static final long serialVersionUID = 1L;
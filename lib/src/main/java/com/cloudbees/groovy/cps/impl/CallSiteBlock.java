@@ -1,8 +1,11 @@
 package com.cloudbees.groovy.cps.impl;
 
 import com.cloudbees.groovy.cps.Block;
+import com.cloudbees.groovy.cps.sandbox.CallSiteCache;
 import com.cloudbees.groovy.cps.sandbox.CallSiteTag;
+import com.cloudbees.groovy.cps.sandbox.DefaultInvoker;
 import com.cloudbees.groovy.cps.sandbox.Invoker;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.io.Serializable;
 import java.util.Collection;
@@ -19,4 +22,15 @@ public interface CallSiteBlock extends Serializable, Block {
      */
     @NonNull
     Collection<CallSiteTag> getTags();
+
+    /**
+     * Inline cache used by {@link DefaultInvoker} for calls made on behalf of this call site.
+     * Not persisted, so implementations should create it lazily.
+     *
+     * @return null if this call site does not keep a cache
+     */
+    @CheckForNull
+    default CallSiteCache getCallSiteCache() {
+        return null;
+    }
 }
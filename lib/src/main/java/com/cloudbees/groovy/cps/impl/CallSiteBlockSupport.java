@@ -1,5 +1,6 @@
 package com.cloudbees.groovy.cps.impl;
 
+import com.cloudbees.groovy.cps.sandbox.CallSiteCache;
 import com.cloudbees.groovy.cps.sandbox.CallSiteTag;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.util.Collection;
@@ -17,6 +18,8 @@ public abstract class CallSiteBlockSupport implements CallSiteBlock {
      */
     private final Collection<CallSiteTag> tags;
 
+    private transient volatile CallSiteCache callSiteCache;
+
     public CallSiteBlockSupport(Collection<CallSiteTag> tags) {
         if (tags.isEmpty()) tags = null;
         this.tags = tags;
@@ -28,5 +31,14 @@ public abstract class CallSiteBlockSupport implements CallSiteBlock {
         return Collections.unmodifiableCollection(tags);
     }
 
+    @Override
+    public CallSiteCache getCallSiteCache() {
+        CallSiteCache c = callSiteCache;
+        if (c == null) {
+            callSiteCache = c = new CallSiteCache();
+        }
+        return c;
+    }
+
     private static final long serialVersionUID = 1L;
 }
@@ -1,13 +1,16 @@
 package com.cloudbees.groovy.cps.impl;
 
-import java.lang.ref.Reference;
-import java.lang.ref.WeakReference;
+import java.util.Arrays;
 
 /**
  * As a crude way to distinguish asynchronous caller vs synchronous caller,
  * remember the method call about to happen so that the callee can check
  * if it is invoked by asynchronous caller or not.
  *
+ * <p>
+ * The call is only remembered while it is in progress, so references are held strongly
+ * (and without allocating anything per call) until {@link #clear} is called.
+ *
  * @author Kohsuke Kawaguchi
  */
 public class Caller {
@@ -24,56 +27,71 @@ public class Caller {
      */
     public static boolean isAsynchronous(Object receiver, String method, Object... args) {
         Info i = store.get();
-        return i.receiver != null
-                && receiver == i.receiver.get()
+        return i.method != null
+                && receiver == i.receiver
                 && method.equals(i.method)
-                && arrayShallowEquals(i.args, args);
+                && arrayShallowEquals(i.args, i.argc, args);
     }
 
-    private static boolean arrayShallowEquals(Reference<Object>[] a, Object[] b) {
-        if (a.length != b.length) return false;
-        for (int i = 0; i < a.length; i++) if (a[i].get() != b[i]) return false;
+    private static boolean arrayShallowEquals(Object[] a, int argc, Object[] b) {
+        if (argc != b.length) return false;
+        for (int i = 0; i < argc; i++) if (a[i] != b[i]) return false;
         return true;
     }
 
     public static boolean isAsynchronous(Object receiver, String method) {
         Info i = store.get();
-        return i.receiver != null && receiver == i.receiver.get() && method.equals(i.method) && i.args.length == 0;
+        return i.method != null && receiver == i.receiver && method.equals(i.method) && i.argc == 0;
     }
 
     public static boolean isAsynchronous(Object receiver, String method, Object arg1) {
         Info i = store.get();
-        return i.receiver != null
-                && receiver == i.receiver.get()
+        return i.method != null
+                && receiver == i.receiver
                 && method.equals(i.method)
-                && i.args.length == 1
-                && i.args[0].get() == arg1;
+                && i.argc == 1
+                && i.args[0] == arg1;
     }
 
     public static boolean isAsynchronous(Object receiver, String method, Object arg1, Object arg2) {
         Info i = store.get();
-        return i.receiver != null
-                && receiver == i.receiver.get()
+        return i.method != null
+                && receiver == i.receiver
                 && method.equals(i.method)
-                && i.args.length == 2
-                && i.args[0].get() == arg1
-                && i.args[1].get() == arg2;
+                && i.argc == 2
+                && i.args[0] == arg1
+                && i.args[1] == arg2;
     }
 
     static class Info {
-        private Reference<Object> receiver;
+        private Object receiver;
         private String method;
-        private Reference<Object>[] args;
+        /** Reused across calls; only the first {@link #argc} elements are meaningful. */
+        private Object[] args = new Object[4];
+
+        private int argc;
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"}) // generic array creation
     static void record(Object receiver, String method, Object[] args) {
         Info c = store.get();
-        c.receiver = new WeakReference<>(receiver);
+        c.receiver = receiver;
         c.method = method;
-        c.args = new WeakReference[args.length];
-        for (int i = 0; i < args.length; i++) {
-            c.args[i] = new WeakReference<>(args[i]);
+        if (c.args.length < args.length) {
+            c.args = new Object[args.length];
         }
+        // copy rather than keep the array, since the callee may coerce arguments in place
+        System.arraycopy(args, 0, c.args, 0, args.length);
+        c.argc = args.length;
+    }
+
+    /**
+     * Forgets the call remembered by {@link #record}, so that we do not keep its receiver and arguments alive.
+     */
+    static void clear() {
+        Info c = store.get();
+        c.receiver = null;
+        c.method = null;
+        Arrays.fill(c.args, 0, c.argc, null);
+        c.argc = 0;
     }
 }
@@ -54,13 +54,17 @@ class ClosureCallEnv extends CallEnv {
     }
 
     public Object getLocalVariable(String name) {
-        if (locals.containsKey(name)) return locals.get(name);
+        // see BlockScopeEnv.getLocalVariable
+        Object v = locals.get(name);
+        if (v != null || locals.containsKey(name)) return v;
         else return captured.getLocalVariable(name);
     }
 
     public void setLocalVariable(String name, Object value) {
-        if (locals.containsKey(name)) locals.put(name, value);
-        else captured.setLocalVariable(name, value);
+        // replace only writes if the variable is declared here, sparing a separate containsKey in the common case
+        if (locals.isEmpty() || (locals.replace(name, value) == null && !locals.containsKey(name))) {
+            captured.setLocalVariable(name, value);
+        }
     }
 
     public Class getLocalVariableType(String name) {
@@ -71,10 +71,8 @@ abstract class ContinuationGroup implements Serializable {
             final Object receiver,
             final String methodName,
             final Object... args) {
-        List<String> expectedMethodNames = new ArrayList<>(2);
-        expectedMethodNames.add(methodName);
         boolean laxCall = false;
-        Object effectiveReceiver = findEffectiveReceiver(receiver, null);
+        Object effectiveReceiver = findEffectiveReceiver(receiver);
         try {
             Caller.record(receiver, methodName, args);
 
@@ -86,42 +84,78 @@ abstract class ContinuationGroup implements Serializable {
                 v = inv.superCall(s.senderType, s.receiver, methodName, args);
             } else {
                 if (effectiveReceiver instanceof Script) {
-                    if (methodName.equals("evaluate")) { // Script.evaluate → GroovyShell.evaluate → Script.run
-                        expectedMethodNames.add("run");
-                    }
-                    // CpsScript.invokeMethod e.g. on a UserDefinedGlobalVariable cannot be predicted from here.
-                    expectedMethodNames.add("call");
                     laxCall = !((Script) effectiveReceiver)
                             .getBinding()
                             .getVariables()
                             .containsKey(methodName); // lax unless like invokePropertyOrMissing
-                } else if (effectiveReceiver instanceof GroovyShell && methodName.equals("evaluate")) {
-                    expectedMethodNames.add("run");
-                } else if (effectiveReceiver instanceof CpsBooleanClosureWrapper && methodName.equals("callForMap")) {
-                    expectedMethodNames.add("call");
-                } else if ((effectiveReceiver instanceof ListWithDefault || effectiveReceiver instanceof MapWithDefault)
-                        && methodName.equals("get")) {
-                    expectedMethodNames.add("call");
                 }
                 // TODO: spread
                 v = inv.methodCall(receiver, methodName, args);
             }
+            Caller.clear();
             // if this was a normal function, the method had just executed synchronously
             return k.receive(v);
         } catch (CpsCallableInvocation inv) {
+            Caller.clear();
             if (!methodName.startsWith("$")) { // see TODO comment in Translator w.r.t. overloadsResolved
+                List<String> expectedMethodNames = expectedMethodNames(receiver, effectiveReceiver, methodName);
                 if (laxCall && inv.receiver instanceof CpsClosure) {
-                    // Potential false negative from overly lax addition above.
+                    // Potential false negative from overly lax addition in expectedMethodNames.
                     expectedMethodNames.remove("call");
                 }
                 inv.checkMismatch(effectiveReceiver, expectedMethodNames);
             }
             return inv.invoke(e, loc, k);
         } catch (Throwable t) {
+            Caller.clear();
             return throwException(e, t, loc, new ReferenceStackTrace());
         }
     }
 
+    /**
+     * Method names a {@link CpsCallableInvocation} may legitimately report for a given call.
+     * Only computed when such an invocation is actually caught, to keep the common path free of allocation.
+     */
+    private static List<String> expectedMethodNames(Object receiver, Object effectiveReceiver, String methodName) {
+        List<String> expectedMethodNames = new ArrayList<>(3);
+        expectedMethodNames.add(methodName);
+        if (receiver instanceof Super) {
+            return expectedMethodNames;
+        }
+        if (effectiveReceiver instanceof Script) {
+            if (methodName.equals("evaluate")) { // Script.evaluate → GroovyShell.evaluate → Script.run
+                expectedMethodNames.add("run");
+            }
+            // CpsScript.invokeMethod e.g. on a UserDefinedGlobalVariable cannot be predicted from here.
+            expectedMethodNames.add("call");
+        } else if (effectiveReceiver instanceof GroovyShell && methodName.equals("evaluate")) {
+            expectedMethodNames.add("run");
+        } else if (effectiveReceiver instanceof CpsBooleanClosureWrapper && methodName.equals("callForMap")) {
+            expectedMethodNames.add("call");
+        } else if ((effectiveReceiver instanceof ListWithDefault || effectiveReceiver instanceof MapWithDefault)
+                && methodName.equals("get")) {
+            expectedMethodNames.add("call");
+        }
+        return expectedMethodNames;
+    }
+
+    /**
+     * Maximum length of a closure owner chain we follow before checking for cycles.
+     */
+    private static final int OWNER_CHAIN_LIMIT = 16;
+
+    private static Object findEffectiveReceiver(Object receiver) {
+        Object r = receiver;
+        for (int i = 0; i < OWNER_CHAIN_LIMIT; i++) {
+            if (!(r instanceof CpsClosure)) {
+                return r;
+            }
+            r = ((CpsClosure) r).getOwner();
+        }
+        // unusually deep, possibly cyclic
+        return findEffectiveReceiver(receiver, null);
+    }
+
     private static Object findEffectiveReceiver(Object receiver, Map<Object, Boolean> encountered) {
         if (!(receiver instanceof CpsClosure)) {
             return receiver;
@@ -8,8 +8,14 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Used to bind an instance method to a {@link Continuation} object.
@@ -23,24 +29,66 @@ import java.lang.reflect.Method;
  * parameter is given to the {@link #bind(Object)} method. This allows {@link ContinuationPtr}s to be
  * created as static singletons.
  *
+ * <p>
+ * The method is not invoked reflectively. Instead, {@link LambdaMetafactory} is used to spin a
+ * {@link Receiver} that calls it directly, so the interpreter loop does not go through {@link Method#invoke}.
+ * The persisted form is still the declaring class plus the method name,
+ * and a {@link Receiver} is generated only once for each method.
+ *
  * @see ContinuationGroup#then(Block, Env, ContinuationPtr)
  * @author Kohsuke Kawaguchi
  */
 class ContinuationPtr implements Serializable {
     private transient /*final except serialization*/ Method m;
 
+    private transient /*final except serialization*/ Receiver receiver;
+
+    /**
+     * {@link Receiver}s generated so far, by method name, so that each is spun only once per method
+     * rather than again whenever a pointer is deserialized.
+     * Held per class so that this does not keep a class loader alive.
+     */
+    private static final ClassValue<Map<String, Receiver>> RECEIVERS = new ClassValue<>() {
+        @Override
+        protected Map<String, Receiver> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
     ContinuationPtr(Class<?> type, String methodName) {
         resolveMethod(type, methodName);
     }
 
     private void resolveMethod(Class<?> type, String methodName) {
         try {
-            m = type.getMethod(methodName, Object.class);
+            Method method = type.getMethod(methodName, Object.class);
+            m = method;
+            receiver = RECEIVERS.get(method.getDeclaringClass()).computeIfAbsent(methodName, k -> makeReceiver(method));
         } catch (NoSuchMethodException e) {
             throw new AssertionError(e);
         }
     }
 
+    /**
+     * Generates a {@link Receiver} that invokes the given continuation method without reflection.
+     */
+    private static Receiver makeReceiver(Method m) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle impl = lookup.unreflect(m);
+            CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    "receive",
+                    MethodType.methodType(Receiver.class),
+                    MethodType.methodType(Next.class, Object.class, Object.class),
+                    impl,
+                    MethodType.methodType(Next.class, m.getDeclaringClass(), Object.class));
+            return (Receiver) site.getTarget().invoke();
+        } catch (Throwable t) {
+            throw new AssertionError("Failed to bind " + m, t);
+        }
+    }
+
     /**
      * Binds the pointer to a continuation method to a specific receiver instance.
      */
@@ -59,6 +107,14 @@ class ContinuationPtr implements Serializable {
         oos.writeUTF(m.getName());
     }
 
+    /**
+     * Functional form of a continuation method, with the receiver instance passed explicitly.
+     */
+    @FunctionalInterface
+    interface Receiver {
+        Next receive(Object target, Object o);
+    }
+
     private class ContinuationImpl implements Continuation {
         private final Object target;
 
@@ -67,16 +123,7 @@ class ContinuationPtr implements Serializable {
         }
 
         public Next receive(Object o) {
-            try {
-                return (Next) m.invoke(target, o);
-            } catch (IllegalAccessException e) {
-                throw (IllegalAccessError) new IllegalAccessError().initCause(e);
-            } catch (InvocationTargetException e) {
-                Throwable t = e.getTargetException();
-                if (t instanceof Error) throw (Error) t;
-                if (t instanceof RuntimeException) throw (RuntimeException) t;
-                throw new Error(e);
-            }
+            return receiver.receive(target, o);
         }
 
         private static final long serialVersionUID = 1L;
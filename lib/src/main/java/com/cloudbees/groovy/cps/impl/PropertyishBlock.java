@@ -6,6 +6,7 @@ import com.cloudbees.groovy.cps.Env;
 import com.cloudbees.groovy.cps.LValue;
 import com.cloudbees.groovy.cps.LValueBlock;
 import com.cloudbees.groovy.cps.Next;
+import com.cloudbees.groovy.cps.sandbox.CallSiteCache;
 import com.cloudbees.groovy.cps.sandbox.CallSiteTag;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.util.Collection;
@@ -22,6 +23,8 @@ abstract class PropertyishBlock extends LValueBlock implements CallSiteBlock, Bl
     private final SourceLocation loc;
     private final boolean safe;
 
+    private transient volatile CallSiteCache callSiteCache;
+
     public PropertyishBlock(SourceLocation loc, Block lhs, Block property, boolean safe, Collection<CallSiteTag> tags) {
         this.loc = loc;
         this.lhs = lhs;
@@ -35,6 +38,15 @@ abstract class PropertyishBlock extends LValueBlock implements CallSiteBlock, Bl
         return tags != null ? Collections.unmodifiableCollection(tags) : Collections.<CallSiteTag>emptySet();
     }
 
+    @Override
+    public CallSiteCache getCallSiteCache() {
+        CallSiteCache c = callSiteCache;
+        if (c == null) {
+            callSiteCache = c = new CallSiteCache();
+        }
+        return c;
+    }
+
     public Next evalLValue(final Env e, final Continuation k) {
         return new ContinuationImpl(e, k).then(lhs, e, fixLhs);
     }
@@ -91,7 +91,22 @@ public class SpreadBlock implements Block {
         private static final long serialVersionUID = 1L;
     }
 
+    /**
+     * Interpolates any {@link SpreadList} elements into the surrounding array.
+     *
+     * @return the expanded array, or {@code list} itself if it contains no {@link SpreadList}
+     */
     public static Object[] despreadList(Object[] list) {
+        boolean spread = false;
+        for (Object element : list) {
+            if (element instanceof SpreadList) {
+                spread = true;
+                break;
+            }
+        }
+        if (!spread) {
+            return list;
+        }
         List<Object> expanded = new ArrayList<>();
         for (Object element : list) {
             if (element instanceof SpreadList) {
@@ -0,0 +1,117 @@
+package com.cloudbees.groovy.cps.sandbox;
+
+import com.cloudbees.groovy.cps.impl.CallSiteBlock;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import groovy.lang.GroovyClassLoader;
+import org.codehaus.groovy.runtime.callsite.CallSite;
+import org.codehaus.groovy.runtime.callsite.CallSiteArray;
+
+/**
+ * Polymorphic inline cache of Groovy {@link CallSite}s for a single {@link CallSiteBlock}.
+ *
+ * <p>
+ * Groovy call sites replace themselves in their {@link CallSiteArray} with a specialized version
+ * after the first dispatch, so reusing the same array lets subsequent calls with the same receiver
+ * and argument classes skip metaclass method selection. This class keeps one such array per
+ * combination of method name and receiver class, up to a small limit, after which the call site is
+ * considered megamorphic and calls go through a fresh {@link CallSiteArray} as before.
+ *
+ * <p>
+ * Instances are never persisted; {@link CallSiteBlock}s create them lazily, including after deserialization.
+ *
+ * <p>
+ * CPS code always runs with {@link com.cloudbees.groovy.cps.Continuable#categories} in use,
+ * and while any category is in use Groovy does not specialize call sites,
+ * so there is little to reuse and each cache is just another allocation for a block.
+ * Off by default for that reason; see {@code CallSiteCacheBenchmark}, which runs under the same categories.
+ *
+ * @see DefaultInvoker#contextualize(CallSiteBlock)
+ */
+public final class CallSiteCache {
+    /**
+     * Whether {@link DefaultInvoker} uses inline caches at all. Useful to compare performance with and without.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for comparison in benchmarks")
+    public static boolean ENABLED = Boolean.getBoolean(CallSiteCache.class.getName() + ".enabled");
+
+    /**
+     * Number of distinct receiver types (per method name) after which we stop caching.
+     */
+    static final int POLYMORPHIC_LIMIT = 4;
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    /**
+     * Copy-on-write so that lookups need no locking; call sites may be shared by concurrently running programs.
+     */
+    private volatile Entry[] entries = EMPTY;
+
+    /**
+     * {@link DefaultInvoker} bound to this cache.
+     */
+    final DefaultInvoker invoker = new DefaultInvoker(this);
+
+    /**
+     * Finds or creates a call site for the given method invoked on the given receiver.
+     *
+     * @param receiver
+     *      receiver of the call; a {@link Class} for static method and constructor calls
+     */
+    CallSite get(String method, @CheckForNull Object receiver) {
+        boolean isStatic = receiver instanceof Class;
+        Class<?> type = receiver == null ? Void.class : isStatic ? (Class<?>) receiver : receiver.getClass();
+
+        Entry[] es = entries;
+        for (Entry e : es) {
+            if (e.type == type && e.isStatic == isStatic && e.method.equals(method)) {
+                return e.site.array[0];
+            }
+        }
+
+        CallSiteArray csa = DefaultInvoker.newCallSiteArray(method);
+        if (cacheable(type) && countMethod(es, method) < POLYMORPHIC_LIMIT) {
+            synchronized (this) {
+                Entry[] current = entries;
+                Entry[] updated = new Entry[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, current.length);
+                updated[current.length] = new Entry(method, type, isStatic, csa);
+                entries = updated;
+            }
+        }
+        return csa.array[0];
+    }
+
+    private static int countMethod(Entry[] es, String method) {
+        int n = 0;
+        for (Entry e : es) {
+            if (e.method.equals(method)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Specialized call sites hold on to the metaclass of the receiver.
+     * Blocks such as those of {@code CpsDefaultGroovyMethods} live as long as this library does,
+     * so we must not cache classes defined by scripts, or their class loaders could never be collected.
+     */
+    private static boolean cacheable(Class<?> type) {
+        return !(type.getClassLoader() instanceof GroovyClassLoader);
+    }
+
+    private static final class Entry {
+        final String method;
+        final Class<?> type;
+        final boolean isStatic;
+        final CallSiteArray site;
+
+        Entry(String method, Class<?> type, boolean isStatic, CallSiteArray site) {
+            this.method = method;
+            this.type = type;
+            this.isStatic = isStatic;
+            this.site = site;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.cloudbees.groovy.cps.sandbox;
 
 import com.cloudbees.groovy.cps.impl.CallSiteBlock;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import groovy.lang.GroovyRuntimeException;
 import groovy.lang.MetaClass;
 import org.codehaus.groovy.runtime.InvokerHelper;
@@ -15,14 +16,28 @@ import org.codehaus.groovy.runtime.callsite.CallSiteArray;
  * @author Kohsuke Kawaguchi
  */
 public class DefaultInvoker implements Invoker {
+    /**
+     * Inline cache of the call site this invoker was {@linkplain #contextualize contextualized} for, if any.
+     */
+    @CheckForNull
+    private final transient CallSiteCache cache;
+
+    public DefaultInvoker() {
+        this(null);
+    }
+
+    /*package*/ DefaultInvoker(@CheckForNull CallSiteCache cache) {
+        this.cache = cache;
+    }
+
     public Object methodCall(Object receiver, String method, Object[] args) throws Throwable {
-        CallSite callSite = fakeCallSite(method);
+        CallSite callSite = callSite(receiver, method);
         Object v = callSite.call(receiver, args);
         return v;
     }
 
     public Object constructorCall(Class lhs, Object[] args) throws Throwable {
-        Object v = fakeCallSite("<init>").callConstructor(lhs, args);
+        Object v = callSite(lhs, "<init>").callConstructor(lhs, args);
         return v;
     }
 
@@ -54,11 +69,11 @@ public class DefaultInvoker implements Invoker {
     }
 
     public Object getArray(Object lhs, Object index) throws Throwable {
-        return fakeCallSite("getAt").call(lhs, index);
+        return callSite(lhs, "getAt").call(lhs, index);
     }
 
     public void setArray(Object lhs, Object index, Object value) throws Throwable {
-        fakeCallSite("putAt").call(lhs, index, value);
+        callSite(lhs, "putAt").call(lhs, index, value);
     }
 
     public Object methodPointer(Object lhs, String name) {
@@ -72,14 +87,31 @@ public class DefaultInvoker implements Invoker {
         return coerce ? ScriptBytecodeAdapter.asType(value, type) : ScriptBytecodeAdapter.castToType(value, type);
     }
 
+    /**
+     * Returns an invoker that reuses Groovy call sites across invocations made on behalf of the given block.
+     * Subtypes are returned as is, since they may rely on {@link #fakeCallSite}.
+     */
     public Invoker contextualize(CallSiteBlock tags) {
+        if (cache == null && CallSiteCache.ENABLED && getClass() == DefaultInvoker.class) {
+            CallSiteCache c = tags.getCallSiteCache();
+            if (c != null) {
+                return c.invoker;
+            }
+        }
         return this;
     }
 
+    private CallSite callSite(Object receiver, String method) {
+        return cache != null ? cache.get(method, receiver) : fakeCallSite(method);
+    }
+
     /*TODO: specify the proper owner value (to the script that includes the call site) */
     protected CallSite fakeCallSite(String method) {
-        CallSiteArray csa = new CallSiteArray(DefaultInvoker.class, new String[] {method});
-        return csa.array[0];
+        return newCallSiteArray(method).array[0];
+    }
+
+    static CallSiteArray newCallSiteArray(String method) {
+        return new CallSiteArray(DefaultInvoker.class, new String[] {method});
     }
 
     private static final long serialVersionUID = 1L;
@@ -61,7 +61,7 @@ public class SandboxInvoker implements Invoker {
 
     public Invoker contextualize(CallSiteBlock tags) {
         if (tags.getTags().contains(Untrusted.INSTANCE)) return this;
-        if (tags.getTags().contains(Trusted.INSTANCE)) return DefaultInvoker.INSTANCE;
+        if (tags.getTags().contains(Trusted.INSTANCE)) return DefaultInvoker.INSTANCE.contextualize(tags);
 
         // for compatibility reasons, if the call site doesn't have any tag, we'll assume it's untrusted.
         // this is because we used to not put any tags
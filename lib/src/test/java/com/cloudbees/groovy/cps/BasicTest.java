@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNull;
 import com.cloudbees.groovy.cps.impl.CpsCallableInvocation;
 import com.cloudbees.groovy.cps.impl.CpsFunction;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.List;
 import org.codehaus.groovy.runtime.ScriptBytecodeAdapter;
 import org.junit.Test;
@@ -322,4 +323,29 @@ public class BasicTest {
                         b.declareVariable(int.class, "x"),
                         b.return_($x)));
     }
+
+    /**
+     * x = 1;
+     * if (true) {
+     *     Object x;
+     *     y = x;
+     *     x = 2;
+     * }
+     * return [x, y];
+     */
+    @Test
+    public void shadowedVariableWithNullValue() {
+        assertEquals(
+                Arrays.asList(1, null),
+                run(
+                        b.setLocalVariable(0, "x", b.one()),
+                        b.setLocalVariable(0, "y", b.list()),
+                        b.if_(
+                                b.true_(),
+                                b.block(
+                                        b.declareVariable(Object.class, "x"),
+                                        b.setLocalVariable(0, "y", $x),
+                                        b.setLocalVariable(0, "x", b.two()))),
+                        b.return_(b.list($x, $y))));
+    }
 }
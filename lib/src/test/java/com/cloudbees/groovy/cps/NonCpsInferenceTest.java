@@ -0,0 +1,77 @@
+package com.cloudbees.groovy.cps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import groovy.lang.Closure;
+import groovy.lang.Script;
+import java.lang.reflect.Method;
+import org.junit.Test;
+
+public class NonCpsInferenceTest extends AbstractGroovyCpsTest {
+    @Override
+    protected CpsTransformer createCpsTransformer() {
+        CpsTransformer t = super.createCpsTransformer();
+        t.setConfiguration(new TransformerConfiguration().withNonCpsInference(true));
+        return t;
+    }
+
+    private boolean isTransformed(String script, String method, Class<?>... parameterTypes) throws Exception {
+        Script s = getCsh().parse(script);
+        Method m = s.getClass().getMethod(method, parameterTypes);
+        return m.isAnnotationPresent(WorkflowTransformed.class);
+    }
+
+    @Test
+    public void inferred() throws Exception {
+        assertFalse(isTransformed("String greet(String name) { 'Hello ' + name.trim() }", "greet", String.class));
+        assertFalse(isTransformed(
+                "int cmp(String a, String b) { int x = a.length(); x += 1; int y = b.length(); x <=> Math.max(y, 0) }",
+                "cmp",
+                String.class,
+                String.class));
+        assertFalse(isTransformed("def wrap(x) { [value: x, text: \"${x}\"] }", "wrap", Object.class));
+    }
+
+    @Test
+    public void notInferred() throws Exception {
+        assertTrue(isTransformed("def foo(x) { x.bar() }", "foo", Object.class));
+        assertTrue(isTransformed("def foo(x) { x + 1 }", "foo", Object.class));
+        assertTrue(isTransformed("def foo(String x) { bar(x) }; def bar(x) { x }", "foo", String.class));
+        assertTrue(isTransformed("def foo(String x) { [x].each { } }", "foo", String.class));
+        assertTrue(isTransformed("def foo(int x) { while (x > 0) { x-- } }", "foo", int.class));
+        assertTrue(isTransformed("def foo(String x) { y = x }", "foo", String.class));
+        assertTrue(isTransformed("def foo(x) { x.length }", "foo", Object.class));
+        assertTrue(isTransformed("1 + 1", "run"));
+    }
+
+    @Test
+    public void closureArgumentsNotInferred() throws Exception {
+        assertTrue(isTransformed("def rep(int n, Closure body) { n.times(body) }", "rep", int.class, Closure.class));
+        assertTrue(isTransformed(
+                "def lines(String s, Closure c) { s.eachLine(c) }", "lines", String.class, Closure.class));
+        assertTrue(isTransformed(
+                "def lines(String s, Object o) { Closure c = (Closure) o; s.eachLine(c) }",
+                "lines",
+                String.class,
+                Object.class));
+        assertTrue(isTransformed(
+                "def rep(int n, Closure body) { Closure c = body; n.times(c) }", "rep", int.class, Closure.class));
+        assertTrue(isTransformed("def foo(String s, x) { s.concat(x) }", "foo", String.class, Object.class));
+    }
+
+    @Test
+    public void closureArgumentsStillRunAsCps() throws Throwable {
+        assertEquals(
+                3,
+                evalCPSonly("def rep(int n, Closure body) { n.times(body) }; int c = 0; rep(3) { c++ }; c"));
+    }
+
+    @Test
+    public void stillWorks() throws Throwable {
+        assertEquals(
+                "Hello world!",
+                evalCPSonly("String greet(String name) { 'Hello ' + name.trim() + '!' }; greet(' world ')"));
+    }
+}
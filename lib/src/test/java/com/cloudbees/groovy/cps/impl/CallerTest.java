@@ -26,4 +26,20 @@ public class CallerTest {
     public void isAsynchronous() {
         assertFalse(Caller.isAsynchronous("hello", "isEmpty"));
     }
+
+    @Test
+    public void recordAndClear() {
+        Object receiver = new Object();
+        Object arg = new Object();
+        Caller.record(receiver, "foo", new Object[] {arg});
+        assertTrue(Caller.isAsynchronous(receiver, "foo", arg));
+        assertFalse(Caller.isAsynchronous(receiver, "foo"));
+        assertFalse(Caller.isAsynchronous(receiver, "foo", new Object()));
+        assertFalse(Caller.isAsynchronous(receiver, "bar", arg));
+        Caller.record(null, "foo", new Object[] {1, 2, 3, 4, 5});
+        assertTrue(Caller.isAsynchronous(null, "foo", 1, 2, 3, 4, 5));
+        Caller.clear();
+        assertFalse(Caller.isAsynchronous(null, "foo", 1, 2, 3, 4, 5));
+        assertFalse(Caller.isAsynchronous(receiver, "foo", arg));
+    }
 }
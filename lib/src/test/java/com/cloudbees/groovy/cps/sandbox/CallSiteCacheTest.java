@@ -0,0 +1,70 @@
+package com.cloudbees.groovy.cps.sandbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.cloudbees.groovy.cps.AbstractGroovyCpsTest;
+import groovy.lang.GroovyClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallSiteCacheTest extends AbstractGroovyCpsTest {
+
+    private boolean wasEnabled;
+
+    @Before
+    public void enable() {
+        wasEnabled = CallSiteCache.ENABLED;
+        CallSiteCache.ENABLED = true;
+    }
+
+    @After
+    public void restore() {
+        CallSiteCache.ENABLED = wasEnabled;
+    }
+
+    @Test
+    public void reusesCallSitePerReceiverType() throws Throwable {
+        CallSiteCache cache = new CallSiteCache();
+        assertEquals(3, cache.invoker.methodCall("abc", "length", new Object[0]));
+        assertSame(cache.get("length", "xyz"), cache.get("length", "other"));
+        assertEquals(2, cache.invoker.methodCall(List.of(1, 2), "size", new Object[0]));
+        assertEquals("7", cache.invoker.methodCall(String.class, "valueOf", new Object[] {7}));
+        assertEquals("x", cache.invoker.constructorCall(String.class, new Object[] {"x"}));
+    }
+
+    @Test
+    public void polymorphicAndMegamorphicCallSites() {
+        assertEvaluate(
+                Arrays.asList(3, 2, 1, 2, 4, 3, 1),
+                "def r = []\n"
+                        + "for (x in ['abc', [1, 2], [a: 1], 'de', 1..4, [1, 2, 3] as Set, 'f']) {\n"
+                        + "  r.add(x.size())\n"
+                        + "}\n"
+                        + "r");
+    }
+
+    @Test
+    public void varyingArgumentTypes() {
+        assertEvaluate(
+                Arrays.asList("1", "2", "3.0", "true"),
+                "def r = []\n"
+                        + "for (x in [1, 2L, 3.0d, true]) {\n"
+                        + "  r.add(String.valueOf(x))\n"
+                        + "}\n"
+                        + "r");
+    }
+
+    @Test
+    public void scriptClassesAreNotCached() throws Exception {
+        try (GroovyClassLoader loader = new GroovyClassLoader()) {
+            Class<?> foo = loader.parseClass("class Foo {}");
+            CallSiteCache cache = new CallSiteCache();
+            assertNotSame(cache.get("<init>", foo), cache.get("<init>", foo));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+
+/**
+ * Compiled classes of the scripts of one build, saved next to {@link CpsFlowExecution#getProgramDataFile}
+ * so that resuming the build need not compile {@code WorkflowScript} and {@link CpsFlowExecution#loadedScripts} again.
+ *
+ * <p>Unlike {@link ScriptClassCache}, entries may include classes compiled from library sources,
+ * since the {@link ScriptClassCache.Key} includes the class path,
+ * which for a given build is the same when it is resumed.
+ * Any mismatch, or a damaged file, just means the sources are compiled as usual.
+ * @see CpsGroovyShell#reparse
+ */
+final class CompiledScripts {
+
+    private static final Logger LOGGER = Logger.getLogger(CompiledScripts.class.getName());
+
+    /**
+     * Whether to save compiled script classes along with the program.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static boolean ENABLED = SystemProperties.getBoolean(CompiledScripts.class.getName() + ".ENABLED", true);
+
+    private static final byte[] HEADER = {'C', 'P', 'S', 'C', 1};
+
+    /** Read from disk when resuming, until the scripts have all been parsed. */
+    private final Map<ScriptClassCache.Key, ScriptClassCache.Entry> loaded;
+
+    /** Compiled since the file was last written. */
+    private final Map<ScriptClassCache.Key, ScriptClassCache.Entry> pending = new LinkedHashMap<>();
+
+    /** Everything known to be in the file. */
+    private final Set<ScriptClassCache.Key> saved;
+
+    private CompiledScripts(Map<ScriptClassCache.Key, ScriptClassCache.Entry> loaded) {
+        this.loaded = loaded;
+        this.saved = new HashSet<>(loaded.keySet());
+    }
+
+    /**
+     * Reads what was saved for a build, if anything.
+     */
+    static CompiledScripts load(File file) {
+        return new CompiledScripts(ENABLED ? read(file) : new HashMap<>());
+    }
+
+    synchronized @CheckForNull ScriptClassCache.Entry get(@NonNull ScriptClassCache.Key key) {
+        return loaded.get(key);
+    }
+
+    synchronized void put(@NonNull ScriptClassCache.Key key, @NonNull ScriptClassCache.Entry entry) {
+        if (ENABLED && !saved.contains(key)) {
+            pending.put(key, entry);
+        }
+    }
+
+    /**
+     * Called once {@code WorkflowScript} and any loaded scripts have been parsed, since nothing more will be looked up.
+     */
+    synchronized void scriptsParsed() {
+        loaded.clear();
+    }
+
+    /**
+     * Entries which need to be added to the file, if any.
+     */
+    synchronized @CheckForNull Map<ScriptClassCache.Key, ScriptClassCache.Entry> takePending() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        Map<ScriptClassCache.Key, ScriptClassCache.Entry> r = new LinkedHashMap<>(pending);
+        saved.addAll(pending.keySet());
+        pending.clear();
+        return r;
+    }
+
+    /**
+     * Adds entries to the file.
+     */
+    static void append(File file, Map<ScriptClassCache.Key, ScriptClassCache.Entry> entries) throws IOException {
+        Map<ScriptClassCache.Key, ScriptClassCache.Entry> all = read(file);
+        all.putAll(entries);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeInt(all.size());
+            for (Map.Entry<ScriptClassCache.Key, ScriptClassCache.Entry> e : all.entrySet()) {
+                e.getKey().writeTo(out);
+                e.getValue().writeTo(out);
+            }
+        }
+        File tmp = File.createTempFile("atomic", null, file.getParentFile());
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+                out.write(HEADER);
+                out.write(sha256(payload.toByteArray()));
+                payload.writeTo(out);
+            }
+            Files.move(
+                    tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Util.deleteFile(tmp);
+        }
+    }
+
+    private static Map<ScriptClassCache.Key, ScriptClassCache.Entry> read(File file) {
+        Map<ScriptClassCache.Key, ScriptClassCache.Entry> entries = new LinkedHashMap<>();
+        byte[] data;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            if (!Arrays.equals(in.readNBytes(HEADER.length), HEADER)) {
+                LOGGER.fine(() -> "ignoring " + file + " in unknown format");
+                return entries;
+            }
+            byte[] digest = in.readNBytes(32);
+            data = in.readAllBytes();
+            if (!MessageDigest.isEqual(digest, sha256(data))) {
+                LOGGER.warning(() -> "ignoring corrupt " + file);
+                return entries;
+            }
+        } catch (NoSuchFileException x) {
+            return entries;
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "could not read " + file, x);
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                entries.put(ScriptClassCache.Key.readFrom(in), ScriptClassCache.Entry.readFrom(in));
+            }
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "could not read " + file, x);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException x) {
+            throw new AssertionError(x);
+        }
+    }
+}
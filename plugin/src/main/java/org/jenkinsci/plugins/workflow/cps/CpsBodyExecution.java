@@ -254,7 +254,7 @@ class CpsBodyExecution extends BodyExecution {
         }
 
         if (t != null) {
-            t.getExecution().runInCpsVmThread(new FutureCallback<>() {
+            t.getExecution().runInCpsVmThreadUrgently(new FutureCallback<>() {
                 @Override
                 public void onSuccess(CpsThreadGroup g) {
                     if (thread == null) {
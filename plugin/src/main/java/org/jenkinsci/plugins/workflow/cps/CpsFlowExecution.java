@@ -53,6 +53,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyCodeSource;
 import groovy.lang.GroovyShell;
+import groovy.lang.Script;
 import hudson.AbortException;
 import hudson.BulkChange;
 import hudson.Extension;
@@ -365,6 +366,9 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
     /** Class of the {@link CpsScript}; its loader is a {@link groovy.lang.GroovyClassLoader.InnerLoader}, not the same as {@code shell.getClassLoader()}. */
     private transient Class<?> scriptClass;
 
+    /** Classes compiled for {@link #shell}, to be saved with the program; null if not being saved. */
+    private transient @CheckForNull CompiledScripts compiledScripts;
+
     /** Actions to add to the {@link FlowStartNode}. */
     final transient List<Action> flowStartNodeActions = new ArrayList<>();
 
@@ -391,6 +395,22 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
          * @see ClassLoader#getResource
          */
         classLoad,
+        /**
+         * Defining classes for a {@link #parse} from bytecode previously compiled for identical sources.
+         * @see ScriptClassCache
+         */
+        parseCacheHit,
+        /**
+         * Compiling sources during {@link #parse} which were eligible for, but absent from, the cache.
+         * @see ScriptClassCache
+         */
+        parseCacheMiss,
+        /**
+         * Defining classes compiled off the CPS VM thread, which was timed as {@link #parse},
+         * or compiling them again should they clash with classes already defined.
+         * @see CpsGroovyShell#parseAsync
+         */
+        defineCompiled,
         /**
          * Running inside {@link CpsVmExecutorService}, which includes many other things.
          */
@@ -400,10 +420,21 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
          */
         runQueue,
         /**
-         * Saving the program state.
+         * Saving the program state, including any {@linkplain ProgramDataCompression compression}.
          * @see CpsThreadGroup#saveProgram(File)
          */
         saveProgram,
+        /**
+         * Loading the program state, including any {@linkplain ProgramDataCompression decompression},
+         * but not time spent waiting for {@link org.jenkinsci.plugins.workflow.pickles.Pickle}s to be rehydrated.
+         * @see #loadProgramAsync
+         */
+        loadProgram,
+        /**
+         * From a request to {@linkplain #interrupt interrupt} the build until its threads have been told to stop.
+         * Mostly time spent waiting for the CPS VM thread to finish what it is doing.
+         */
+        interrupt,
         /**
          * Loading or saving flow nodes.
          * @see FlowNodeStorage
@@ -663,19 +694,21 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
     private CpsScript parseScript() throws IOException {
         // classloader hierarchy. See doc/classloader.md
         CpsScript s;
+        compiledScripts = owner != null ? CompiledScripts.load(getCompiledScriptsFile()) : null;
         try {
             trusted = new CpsGroovyShellFactory(this).forTrusted().build();
             shell = new CpsGroovyShellFactory(this).withParent(trusted).build();
 
             s = (CpsScript) shell.reparse("WorkflowScript", script);
 
-            for (Entry<String, String> e : loadedScripts.entrySet()) {
-                shell.reparse(e.getKey(), e.getValue());
-            }
+            shell.reparseAll(loadedScripts);
         } catch (RuntimeException | Error x) {
             closeShells();
             throw x;
         }
+        if (compiledScripts != null) {
+            compiledScripts.scriptsParsed();
+        }
 
         s.execution = this;
         return s;
@@ -894,7 +927,7 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
                 }
             } else { // See if we can/should resume build
                 if (canResume()) {
-                    loadProgramAsync(getProgramDataFile());
+                    ResumeCoordinator.resume(this, getProgramDataFile());
                 } else {
                     // TODO if possible, consider trying to close out unterminated blocks to keep existing graph history
                     // That way we can visualize the graph in some error cases.
@@ -923,11 +956,25 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
     public void loadProgramAsync(File programDataFile) {
         final SettableFuture<CpsThreadGroup> result = SettableFuture.create();
         programPromise = result;
+        loadProgram(programDataFile, result);
+    }
 
+    /**
+     * Like {@link #loadProgramAsync} but completes a {@link #programPromise} which has already been set.
+     * Returns once the script has been parsed and {@link org.jenkinsci.plugins.workflow.pickles.Pickle}s requested;
+     * the program itself is deserialized as soon as those are ready, which may be before this method returns.
+     */
+    void loadProgram(File programDataFile, SettableFuture<CpsThreadGroup> result) {
         try {
             scriptClass = parseScript().getClass();
 
-            final RiverReader r = new RiverReader(programDataFile, scriptClass.getClassLoader(), owner);
+            final File inflated;
+            final RiverReader r;
+            try (Timing t = time(TimingKind.loadProgram)) {
+                inflated = ProgramDataCompression.inflate(programDataFile);
+                r = new RiverReader(
+                        inflated != null ? inflated : programDataFile, scriptClass.getClassLoader(), owner);
+            }
             Futures.addCallback(r.restorePickles(pickleFutures = new ArrayList<>()), new FutureCallback<>() {
                 public void onSuccess(Unmarshaller u) {
                     pickleFutures = null;
@@ -935,8 +982,12 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
                         CpsFlowExecution old = PROGRAM_STATE_SERIALIZATION.get();
                         PROGRAM_STATE_SERIALIZATION.set(CpsFlowExecution.this);
                         try {
-                            CpsThreadGroup g = (CpsThreadGroup) u.readObject();
+                            CpsThreadGroup g;
+                            try (Timing t = time(TimingKind.loadProgram)) {
+                                g = (CpsThreadGroup) u.readObject();
+                            }
                             result.set(g);
+                            g.resumeCompilations();
                             pausedWhenLoaded = g.isPaused();
                             g.pause(false);
                         } catch (Throwable t) {
@@ -945,7 +996,7 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
                             PROGRAM_STATE_SERIALIZATION.set(old);
                         }
                     } finally {
-                        r.close();
+                        close(r, inflated);
                     }
                 }
 
@@ -954,7 +1005,7 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
                     try {
                         loadProgramFailed(t, result);
                     } finally {
-                        r.close();
+                        close(r, inflated);
                     }
                 }
             });
@@ -964,6 +1015,17 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
         }
     }
 
+    private static void close(RiverReader r, @CheckForNull File inflated) {
+        r.close();
+        if (inflated != null) {
+            try {
+                Util.deleteFile(inflated);
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "failed to delete " + inflated, x);
+            }
+        }
+    }
+
     /**
      * Used to propagate a failure to load the persisted execution state.
      * @param promise same as {@link #programPromise} but more strongly typed
@@ -1039,6 +1101,17 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
         return new File(owner.getRootDir(), "program.dat");
     }
 
+    /**
+     * Where we store {@link CompiledScripts}.
+     */
+    /*package*/ File getCompiledScriptsFile() throws IOException {
+        return new File(owner.getRootDir(), "program-classes.dat");
+    }
+
+    /*package*/ @CheckForNull CompiledScripts getCompiledScripts() {
+        return compiledScripts;
+    }
+
     /**
      * Execute a task in {@link CpsVmExecutorService} to safely access {@link CpsThreadGroup} internal states.
      *
@@ -1072,6 +1145,50 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
         });
     }
 
+    /**
+     * Like {@link #runInCpsVmThread}, for control tasks such as interrupts,
+     * which should not wait behind work already queued for the CPS VM.
+     * @see CpsVmExecutorService#submitUrgent
+     */
+    void runInCpsVmThreadUrgently(final FutureCallback<CpsThreadGroup> callback) {
+        if (programPromise == null) {
+            throw new IllegalStateException("build storage unloadable, or build already finished");
+        }
+        Futures.addCallback(programPromise, new FutureCallback<>() {
+            @Override
+            public void onSuccess(final CpsThreadGroup g) {
+                g.runner.submitUrgent(() -> callback.onSuccess(g));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                callback.onFailure(t);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #runInCpsVmThread}, for frequent and independent callbacks such as step completions.
+     * Callbacks which arrive while earlier ones are still waiting are run together by a single task,
+     * and any {@link CpsThreadGroup#scheduleRun} they request is done once at the end.
+     */
+    void runInCpsVmThreadBatched(final FutureCallback<CpsThreadGroup> callback) {
+        if (programPromise == null) {
+            throw new IllegalStateException("build storage unloadable, or build already finished");
+        }
+        Futures.addCallback(programPromise, new FutureCallback<>() {
+            @Override
+            public void onSuccess(final CpsThreadGroup g) {
+                g.deliver(callback);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                callback.onFailure(t);
+            }
+        });
+    }
+
     /** See JENKINS-22941 for why this exists. */
     @Override
     public boolean blocksRestart() {
@@ -1087,7 +1204,7 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
             LOGGER.log(Level.FINE, "Not blocking restart due to exception in ProgramPromise: " + this, x);
             return false;
         }
-        if (g.busy) {
+        if (g.busy || g.isCompiling()) {
             return true;
         } else {
             try {
@@ -1118,6 +1235,7 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
         // TODO occasionally tests fail here with RejectedExecutionException,
         // apparently because the runner has been shut down; should we just ignore that?
         g.scheduleRun().get();
+        g.pendingProgramWrites().get();
     }
 
     public synchronized @CheckForNull FlowHead getFlowHead(int id) {
@@ -1304,26 +1422,32 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
         final FlowInterruptedException ex = new FlowInterruptedException(result, causes);
 
         // stop all ongoing activities
-        runInCpsVmThread(new FutureCallback<>() {
+        Timing latency = time(TimingKind.interrupt);
+        runInCpsVmThreadUrgently(new FutureCallback<>() {
             @Override
             public void onSuccess(CpsThreadGroup g) {
-                // don't touch outer ones. See JENKINS-26148
-                Map<FlowHead, CpsThread> m = new LinkedHashMap<>();
-                for (CpsThread t : g.getThreads()) {
-                    m.put(t.head, t);
-                }
-                // for each inner most CpsThread, from young to old...
-                for (CpsThread t : Iterators.reverse(List.copyOf(m.values()))) {
-                    try {
-                        t.stop(ex);
-                    } catch (Exception x) {
-                        LOGGER.log(Level.WARNING, "Failed to abort " + owner, x);
+                try {
+                    // don't touch outer ones. See JENKINS-26148
+                    Map<FlowHead, CpsThread> m = new LinkedHashMap<>();
+                    for (CpsThread t : g.getThreads()) {
+                        m.put(t.head, t);
                     }
+                    // for each inner most CpsThread, from young to old...
+                    for (CpsThread t : Iterators.reverse(List.copyOf(m.values()))) {
+                        try {
+                            t.stop(ex);
+                        } catch (Exception x) {
+                            LOGGER.log(Level.WARNING, "Failed to abort " + owner, x);
+                        }
+                    }
+                } finally {
+                    latency.close();
                 }
             }
 
             @Override
             public void onFailure(Throwable t) {
+                latency.close();
                 LOGGER.log(Level.WARNING, "Failed to interrupt steps in " + owner, t);
             }
         });
@@ -1465,6 +1589,9 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
 
     private void closeShells() {
         try {
+            if (trusted != null) {
+                trusted.releaseSharedTier();
+            }
             if (shell != null) {
                 LOGGER.fine(() -> "closing main class loader from " + owner);
                 shell.getClassLoader().close();
@@ -1526,7 +1653,7 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
         }
     }
 
-    private static void cleanUpLoader(
+    static void cleanUpLoader(
             ClassLoader loader, Set<ClassLoader> encounteredLoaders, Set<Class<?>> encounteredClasses)
             throws Exception {
         if (loader instanceof CpsGroovyShell.TimingLoader) {
@@ -1732,6 +1859,77 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
         return shell.generateScriptName().replaceFirst("[.]groovy$", "");
     }
 
+    /**
+     * Runs a script again which was parsed earlier in this build from the same source, rather than compiling a copy.
+     * Since the class keeps its name, {@link #loadedScripts} does not grow,
+     * and a replacement made by {@link org.jenkinsci.plugins.workflow.cps.replay.ReplayAction} the first time applies.
+     * @param source the text as written, before any replacement
+     * @return null if there is no such script, so {@link #parseAsync} is needed
+     */
+    @CpsVmThreadOnly
+    @CheckForNull
+    Script reuseScript(String source) {
+        CpsThreadGroup g = CpsThreadGroup.current();
+        String className = g != null && CpsGroovyShell.REUSE_SCRIPTS ? g.getParsedScript(source) : null;
+        if (className == null) {
+            return null;
+        }
+        return shell.reuse(className);
+    }
+
+    /**
+     * Parses a loaded script like {@code getShell().parse(text)} would, but without compiling on the CPS VM thread.
+     * @param source the text as written, for {@link #reuseScript}
+     * @param text what to actually compile, normally the same
+     * @param className from {@link #getNextScriptName}
+     * @return completed on the CPS VM thread
+     */
+    CompletableFuture<Script> parseAsync(String source, String text, String className) {
+        return shell.parseAsync(text, className).thenApply(script -> {
+            CpsThreadGroup g = CpsThreadGroup.current();
+            if (g != null) {
+                g.parsedScript(source, script);
+            }
+            return script;
+        });
+    }
+
+    /**
+     * Like {@link #reuseScript} or else {@link #parseAsync},
+     * then prepares to run the script as a body of the given step.
+     * @return completed on the CPS VM thread
+     */
+    @Restricted(NoExternalUse.class)
+    public CompletableFuture<CpsBodyInvoker> loadAsync(
+            CpsStepContext context, String source, String text, String className) {
+        CompletableFuture<CpsBodyInvoker> result = new CompletableFuture<>();
+        Script reused = reuseScript(source);
+        CompletableFuture<Script> parsed =
+                reused != null ? CompletableFuture.completedFuture(reused) : parseAsync(source, text, className);
+        parsed.whenComplete((script, x) -> {
+            if (x != null) {
+                result.completeExceptionally(x);
+                return;
+            }
+            try {
+                runInCpsVmThread(new FutureCallback<>() {
+                    @Override
+                    public void onSuccess(CpsThreadGroup g) {
+                        result.complete(context.newBodyInvoker(g.export(script), true));
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+                });
+            } catch (IllegalStateException e) { // build already finished
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
     /** Has the execution been marked done - note that legacy builds may not have that flag persisted, in which case
      *  we look for a single FlowEndNode head (see: {@link #isComplete()} and {@link FlowExecution#isComplete()})
      */
@@ -1849,6 +2047,7 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
                     var program = programPromise.get();
                     var f = nonresumable ? program.scheduleRun() : program.terminating();
                     f.get(1, TimeUnit.MINUTES);
+                    program.pendingProgramWrites().get(1, TimeUnit.MINUTES);
                     LOGGER.finer(() -> " Pipeline went to sleep OK: " + this);
                     steps.incrementAndGet();
                 } catch (InterruptedException | TimeoutException ex) {
@@ -2386,8 +2585,11 @@ public class CpsFlowExecution extends FlowExecution implements BlockableResume {
                             try {
                                 LOGGER.log(Level.FINE, "Trying to save program for: {0}", CpsFlowExecution.this);
                                 result.saveProgramIfPossible(true);
-                                LOGGER.log(Level.FINE, "Finished saving program for: {0}", CpsFlowExecution.this);
-                                myOutcome.complete(null);
+                                result.pendingProgramWrites().thenRun(() -> {
+                                    LOGGER.log(
+                                            Level.FINE, "Finished saving program for: {0}", CpsFlowExecution.this);
+                                    myOutcome.complete(null);
+                                });
                             } catch (Exception ex) {
                                 // Logged at Level.WARNING when we call `myOutcome.get` and it throws an exception.
                                 myOutcome.completeExceptionally(ex);
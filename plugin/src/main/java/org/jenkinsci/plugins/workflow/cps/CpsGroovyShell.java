@@ -1,12 +1,17 @@
 package org.jenkinsci.plugins.workflow.cps;
 
+import com.google.common.util.concurrent.FutureCallback;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyCodeSource;
 import groovy.lang.GroovyShell;
+import groovy.lang.GroovySystem;
 import groovy.lang.Script;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,14 +22,32 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import jenkins.util.SystemProperties;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.control.BytecodeProcessor;
 import org.codehaus.groovy.control.CompilationFailedException;
 import org.codehaus.groovy.control.CompilationUnit;
 import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
 import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.Whitelist;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.GroovySandbox;
 
@@ -37,6 +60,36 @@ class CpsGroovyShell extends GroovyShell {
 
     private static final Logger LOGGER = Logger.getLogger(CpsGroovyShell.class.getName());
 
+    /**
+     * Maximum number of scripts to compile at once off the calling thread, across all builds.
+     * When parsing a build being resumed, one or less compiles its loaded scripts in turn,
+     * as do shells with {@link #decoratedCompilation}.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static int COMPILE_THREADS = SystemProperties.getInteger(
+            CpsGroovyShell.class.getName() + ".COMPILE_THREADS",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static ThreadPoolExecutor compilers;
+
+    /**
+     * Whether {@link #parseAsync} and {@link CpsScript#evaluate(String)} compile on {@link #compilers}
+     * rather than the CPS VM thread.
+     * Shells with {@link #decoratedCompilation} always compile on the CPS VM thread.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static boolean ASYNC_COMPILATION =
+            SystemProperties.getBoolean(CpsGroovyShell.class.getName() + ".ASYNC_COMPILATION", true);
+
+    /**
+     * Whether loading or evaluating the same source text again in a build runs the script class parsed the first time,
+     * rather than compiling another copy.
+     * @see CpsFlowExecution#reuseScript
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static boolean REUSE_SCRIPTS =
+            SystemProperties.getBoolean(CpsGroovyShell.class.getName() + ".REUSE_SCRIPTS", true);
+
     /**
      * {@link CpsFlowExecution} for which this shell is created.
      *
@@ -44,17 +97,70 @@ class CpsGroovyShell extends GroovyShell {
      */
     private final @CheckForNull CpsFlowExecution execution;
 
+    /**
+     * Identifies the compiler configuration and parent class path, for {@link ScriptClassCache}.
+     * Null if compiled classes from this shell may not be reused.
+     */
+    private final @CheckForNull String compilationFingerprint;
+
+    private final CompilerConfiguration config;
+
+    /**
+     * Creates a fresh equivalent of {@link #config} for each {@link #reparseAll} compilation,
+     * since compilation customizers such as {@link com.cloudbees.groovy.cps.CpsTransformer} are stateful.
+     * Null if scripts may only be compiled in turn.
+     */
+    @CheckForNull
+    Supplier<CompilerConfiguration> configFactory;
+
+    /**
+     * Names of scripts still being compiled by {@link #parseAsync}, which {@link #generateScriptName} must skip.
+     */
+    private final Set<String> reservedScriptNames = new HashSet<>();
+
+    /**
+     * Script classes parsed by this shell, by name, for {@link #reuse}.
+     * Only accessed from the CPS VM thread, or while the program is being loaded.
+     */
+    private final Map<String, Class<?>> scriptClasses = new HashMap<>();
+
+    /**
+     * Whether {@link TrustedClassCache} may be used:
+     * the shell is not sandboxed and has the default parent loader, like the shared loaders.
+     */
+    boolean shareable;
+
+    /**
+     * Whether any {@link GroovyShellDecorator} customizes compilation with this shell.
+     * Its customizers may then change the build as they run, for example by adding libraries to the class path,
+     * so they are run only in turn, on the thread parsing for the build.
+     */
+    boolean decoratedCompilation;
+
     /**
      * Use {@link CpsGroovyShellFactory} to instantiate it.
      */
     CpsGroovyShell(ClassLoader parent, @CheckForNull CpsFlowExecution execution, CompilerConfiguration cc) {
-        this(execution, cc, execution != null ? new TimingLoader(parent, execution) : parent);
+        this(parent, execution, cc, null);
+    }
+
+    CpsGroovyShell(
+            ClassLoader parent,
+            @CheckForNull CpsFlowExecution execution,
+            CompilerConfiguration cc,
+            @CheckForNull String compilationFingerprint) {
+        this(execution, cc, execution != null ? new TimingLoader(parent, execution) : parent, compilationFingerprint);
     }
 
     private CpsGroovyShell(
-            @CheckForNull CpsFlowExecution execution, CompilerConfiguration cc, ClassLoader usuallyTimingLoader) {
+            @CheckForNull CpsFlowExecution execution,
+            CompilerConfiguration cc,
+            ClassLoader usuallyTimingLoader,
+            @CheckForNull String compilationFingerprint) {
         super(usuallyTimingLoader, new Binding(), cc);
         this.execution = execution;
+        this.config = cc;
+        String fingerprint = compilationFingerprint;
         try {
             // Apparently there is no supported way to initialize a GroovyShell with a specified GroovyClassLoader.
             Field loaderF = GroovyShell.class.getDeclaredField("loader");
@@ -62,9 +168,73 @@ class CpsGroovyShell extends GroovyShell {
             loaderF.set(this, new CleanGroovyClassLoader(usuallyTimingLoader, cc));
         } catch (Exception x) {
             LOGGER.log(Level.WARNING, "failed to install CleanGroovyClassLoader", x);
+            fingerprint = null;
+        }
+        this.compilationFingerprint = fingerprint;
+    }
+
+    @CheckForNull
+    String getCompilationFingerprint() {
+        return compilationFingerprint;
+    }
+
+    @CheckForNull
+    TrustedClassCache.Tier getSharedTier() {
+        return getClassLoader() instanceof CleanGroovyClassLoader
+                ? ((CleanGroovyClassLoader) getClassLoader()).tier
+                : null;
+    }
+
+    /**
+     * Makes classes from a tier available to this shell, in place of any set before.
+     * @return false if that is not possible
+     */
+    boolean setSharedTier(TrustedClassCache.Tier tier) {
+        if (!(getClassLoader() instanceof CleanGroovyClassLoader)) {
+            return false;
+        }
+        ((CleanGroovyClassLoader) getClassLoader()).tier = tier;
+        return true;
+    }
+
+    /**
+     * Lets {@link TrustedClassCache} know this shell no longer needs its tier, if any.
+     */
+    void releaseSharedTier() {
+        if (getClassLoader() instanceof CleanGroovyClassLoader) {
+            CleanGroovyClassLoader loader = (CleanGroovyClassLoader) getClassLoader();
+            TrustedClassCache.Tier tier = loader.tier;
+            if (tier != null) {
+                loader.tier = null;
+                TrustedClassCache.release(tier);
+            }
         }
     }
 
+    /**
+     * Creates the loader of a {@link TrustedClassCache.Tier}, which is not associated with any build.
+     */
+    static GroovyClassLoader newSharedLoader(ClassLoader parent, CompilerConfiguration config, URL... roots) {
+        GroovyClassLoader loader = new CleanGroovyClassLoader(parent, config);
+        for (URL root : roots) {
+            loader.addURL(root);
+        }
+        return loader;
+    }
+
+    /**
+     * Lists the loaders of {@link TrustedClassCache.Tier}s used by a shell loader, whose classes are equally trusted.
+     */
+    static List<ClassLoader> sharedLoaders(ClassLoader loader) {
+        if (loader instanceof CleanGroovyClassLoader) {
+            TrustedClassCache.Tier tier = ((CleanGroovyClassLoader) loader).tier;
+            if (tier != null) {
+                return tier.loaders();
+            }
+        }
+        return List.of();
+    }
+
     /**
      * Disables the weird and unreliable {@link groovy.lang.GroovyClassLoader.InnerLoader}.
      * This is apparently only necessary when you are using class recompilation, which we are not.
@@ -78,6 +248,113 @@ class CpsGroovyShell extends GroovyShell {
             super(loader, config);
         }
 
+        /**
+         * Set while compiling a source whose output may be stored in {@link ScriptClassCache}.
+         */
+        private @CheckForNull ScriptClassCache.Recorder recorder;
+
+        /**
+         * Shared loader consulted before compiling sources from the class path.
+         */
+        private volatile @CheckForNull TrustedClassCache.Tier tier;
+
+        @Override
+        public Class loadClass(String name, boolean lookupScriptFiles, boolean preferClassOverScript, boolean resolve)
+                throws ClassNotFoundException, CompilationFailedException {
+            TrustedClassCache.Tier tier = this.tier;
+            if (tier != null && findLoadedClass(name) == null) {
+                try {
+                    return tier.loader.loadClass(name);
+                } catch (ClassNotFoundException x) {
+                    // not from a shared library, so look up as usual
+                }
+            }
+            return super.loadClass(name, lookupScriptFiles, preferClassOverScript, resolve);
+        }
+
+        /**
+         * Defines classes from an earlier compilation.
+         * Nothing is defined if any of them is already defined in this loader,
+         * such as a class of the same name declared by another script,
+         * since the earlier class would otherwise silently be used in its place.
+         * @return the script class, or null if the source should be compiled as usual
+         */
+        @CheckForNull
+        Class<?> defineCachedClasses(
+                ScriptClassCache.Entry entry, GroovyCodeSource codeSource, CompilerConfiguration config) {
+            for (String name : entry.names) {
+                if (findLoadedClass(name) != null) {
+                    LOGGER.fine(() -> "not reusing compiled " + codeSource.getName() + " since " + name
+                            + " is already defined");
+                    return null;
+                }
+            }
+            BytecodeProcessor postprocessor = config.getBytecodePostprocessor();
+            Class<?> main = null;
+            for (int i = 0; i < entry.names.size(); i++) {
+                String name = entry.names.get(i);
+                byte[] code = entry.bytecode.get(i);
+                if (postprocessor != null) {
+                    // as in ClassCollector.createClass
+                    code = postprocessor.processBytecode(name, code);
+                }
+                Class<?> c = defineClass(name, code, 0, code.length, codeSource.getCodeSource());
+                if (name.equals(entry.mainClass)) {
+                    main = c;
+                }
+            }
+            return main;
+        }
+
+        /**
+         * Compiles a source without defining any classes in this loader,
+         * so that other sources may be compiled at the same time.
+         * @param config used by this compilation only
+         * @return null if no script class was compiled
+         */
+        @CheckForNull
+        Precompiled compile(GroovyCodeSource codeSource, CompilerConfiguration config) {
+            CompilationUnit unit = createCompilationUnit(config, codeSource.getCodeSource());
+            SourceUnit su = unit.addSource(codeSource.getName(), codeSource.getScriptText());
+            RecordingCollector collector = new RecordingCollector(unit, su);
+            unit.setClassgenCallback(collector);
+            unit.compile(Phases.CLASS_GENERATION);
+            if (collector.mainClass == null) {
+                return null;
+            }
+            ScriptClassCache.Entry entry = collector.recorder.toEntryWithClassPath(collector.mainClass);
+            return entry != null ? new Precompiled(collector.recorder, entry) : null;
+        }
+
+        /**
+         * Whether classes may be resolved from sources outside of the {@link CompilerConfiguration},
+         * such as libraries added with {@link #addURL}.
+         */
+        boolean hasExtendedClassPath() {
+            return !classPath().isEmpty();
+        }
+
+        /**
+         * Lists {@link #addURL}s from this loader and its parents, and any {@link TrustedClassCache.Tier}s.
+         */
+        String classPath() {
+            StringBuilder b = new StringBuilder();
+            for (ClassLoader l = this; l != null; l = l.getParent()) {
+                if (l instanceof GroovyClassLoader) {
+                    for (URL u : ((GroovyClassLoader) l).getURLs()) {
+                        b.append(u).append(' ');
+                    }
+                }
+                if (l instanceof CleanGroovyClassLoader) {
+                    TrustedClassCache.Tier tier = ((CleanGroovyClassLoader) l).tier;
+                    if (tier != null) {
+                        b.append("tier:").append(tier.key).append(' ');
+                    }
+                }
+            }
+            return b.toString();
+        }
+
         @Override
         protected ClassCollector createCollector(CompilationUnit unit, SourceUnit su) {
             // Super implementation is what creates the InnerLoader.
@@ -136,17 +413,58 @@ class CpsGroovyShell extends GroovyShell {
             return url;
         }
 
+        /**
+         * Records bytecode like {@link CleanClassCollector} with a {@link #recorder}, but defines nothing.
+         */
+        private static final class RecordingCollector extends ClassCollector {
+
+            private final SourceUnit su;
+            private final ScriptClassCache.Recorder recorder = new ScriptClassCache.Recorder();
+            /** As in {@code ClassCollector.generatedClass}. */
+            private @CheckForNull String mainClass;
+
+            RecordingCollector(CompilationUnit unit, SourceUnit su) {
+                super(null, unit, su);
+                this.su = su;
+            }
+
+            @Override
+            protected Class createClass(byte[] code, ClassNode classNode) {
+                ModuleNode module = classNode.getModule();
+                boolean primary = module != null && module.getContext() == su;
+                if (mainClass == null && primary && module.getClasses().get(0) == classNode) {
+                    mainClass = classNode.getName();
+                }
+                recorder.record(classNode, code, primary);
+                return null;
+            }
+        }
+
         private final class CleanClassCollector extends ClassCollector {
 
+            private final SourceUnit su;
+
             CleanClassCollector(CompilationUnit unit, SourceUnit su) {
                 // Cannot override {@code final cl} field so have to do it this way.
                 super(null, unit, su);
+                this.su = su;
             }
 
             @Override
             public GroovyClassLoader getDefiningClassLoader() {
                 return CleanGroovyClassLoader.this;
             }
+
+            @Override
+            protected Class createClass(byte[] code, ClassNode classNode) {
+                Class<?> c = super.createClass(code, classNode);
+                ScriptClassCache.Recorder r = recorder;
+                if (r != null) {
+                    ModuleNode module = classNode.getModule();
+                    r.record(classNode, code, module != null && module.getContext() == su);
+                }
+                return c;
+            }
         }
     }
 
@@ -169,7 +487,11 @@ class CpsGroovyShell extends GroovyShell {
      */
     @Override
     public Script parse(GroovyCodeSource codeSource) throws CompilationFailedException {
-        Script s = doParse(codeSource);
+        return loaded(doParse(codeSource), codeSource);
+    }
+
+    private Script loaded(Script s, GroovyCodeSource codeSource) {
+        parsed(s);
         if (execution != null) {
             execution.loadedScripts.put(s.getClass().getSimpleName(), codeSource.getScriptText());
             execution.saveExecutionIfDurable();
@@ -178,15 +500,213 @@ class CpsGroovyShell extends GroovyShell {
         return s;
     }
 
+    /**
+     * Like {@link #parse(String, String)}, but compiles on {@link #compilers},
+     * so that the CPS VM thread is free meanwhile.
+     * The classes are then defined, and the script recorded and prepared, back on the CPS VM thread.
+     * @param className normally from {@link CpsFlowExecution#getNextScriptName}; reserved until the script is parsed
+     * @return completed on the CPS VM thread, or immediately if compilation may not be done elsewhere
+     */
+    CompletableFuture<Script> parseAsync(String text, String className) {
+        CompletableFuture<Script> result = new CompletableFuture<>();
+        GroovyCodeSource codeSource = new GroovyCodeSource(text, className, DEFAULT_CODE_BASE);
+        CpsFlowExecution execution = this.execution;
+        Supplier<CompilerConfiguration> configFactory = this.configFactory;
+        if (!ASYNC_COMPILATION
+                || decoratedCompilation
+                || execution == null
+                || configFactory == null
+                || !(getClassLoader() instanceof CleanGroovyClassLoader)) {
+            try {
+                result.complete(parse(codeSource));
+            } catch (RuntimeException | Error x) {
+                result.completeExceptionally(x);
+            }
+            return result;
+        }
+        synchronized (this) {
+            reservedScriptNames.add(className);
+        }
+        CleanGroovyClassLoader loader = (CleanGroovyClassLoader) getClassLoader();
+        compilers(Math.max(1, COMPILE_THREADS)).execute(() -> {
+            Precompiled precompiled = null;
+            Throwable failure = null;
+            try (GroovySandbox.Scope scope = sandbox().enter();
+                    CpsFlowExecution.Timing t = execution.time(CpsFlowExecution.TimingKind.parse)) {
+                precompiled = loader.compile(codeSource, configFactory.get());
+            } catch (RuntimeException | Error x) {
+                failure = x;
+            }
+            define(execution, codeSource, precompiled, failure, result);
+        });
+        return result;
+    }
+
+    private void define(
+            CpsFlowExecution execution,
+            GroovyCodeSource codeSource,
+            @CheckForNull Precompiled precompiled,
+            @CheckForNull Throwable failure,
+            CompletableFuture<Script> result) {
+        try {
+            execution.runInCpsVmThread(new FutureCallback<>() {
+                @Override
+                public void onSuccess(CpsThreadGroup g) {
+                    try {
+                        if (failure != null) {
+                            result.completeExceptionally(failure);
+                        } else {
+                            // if precompiled is null, or cannot be defined, this compiles as usual
+                            result.complete(loaded(doParse(codeSource, false, precompiled), codeSource));
+                        }
+                    } catch (RuntimeException | Error x) {
+                        result.completeExceptionally(x);
+                    } finally {
+                        release(codeSource.getName());
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    release(codeSource.getName());
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (IllegalStateException x) { // build already finished
+            release(codeSource.getName());
+            result.completeExceptionally(x);
+        }
+    }
+
+    private synchronized void release(String className) {
+        reservedScriptNames.remove(className);
+    }
+
+    /**
+     * Creates another instance of a script class already defined by {@link #parse} or {@link #reparse}.
+     * @return null if there is no such class
+     */
+    @CheckForNull
+    Script reuse(String className) {
+        Class<?> c = scriptClasses.get(className);
+        if (c == null) {
+            LOGGER.fine(() -> "cannot reuse " + className + " which was not parsed by " + this);
+            return null;
+        }
+        Script s = InvokerHelper.createScript(c, getContext());
+        prepareScript(s);
+        return s;
+    }
+
+    private Script parsed(Script s) {
+        scriptClasses.put(s.getClass().getName(), s.getClass());
+        return s;
+    }
+
     /**
      * Used internally to reload the script back when coming back from the persisted state
      * (therefore we don't want to record this.)
      */
     /*package*/ Script reparse(String className, String text) throws CompilationFailedException {
-        return doParse(new GroovyCodeSource(text, className, DEFAULT_CODE_BASE));
+        return parsed(doParse(new GroovyCodeSource(text, className, DEFAULT_CODE_BASE), true, null));
+    }
+
+    /**
+     * Like calling {@link #reparse} on each script in turn,
+     * but compiling them concurrently on up to {@link #COMPILE_THREADS} threads where that cannot change the result.
+     * Classes are still defined in order, and a script compiled after one that defines classes of its own,
+     * which it might refer to, is compiled only once those are defined.
+     * @param scripts {@link CpsFlowExecution#loadedScripts}
+     */
+    /*package*/ void reparseAll(Map<String, String> scripts) throws CompilationFailedException {
+        Map<String, Future<Precompiled>> compiling = precompile(scripts);
+        try {
+            boolean independent = true;
+            for (Map.Entry<String, String> e : scripts.entrySet()) {
+                GroovyCodeSource codeSource = new GroovyCodeSource(e.getValue(), e.getKey(), DEFAULT_CODE_BASE);
+                Future<Precompiled> f = compiling.remove(e.getKey());
+                Precompiled precompiled = independent && f != null ? await(f, codeSource) : null;
+                ScriptClassCache.Entry known = precompiled != null ? precompiled.entry : cachedEntry(codeSource, true);
+                parsed(doParse(codeSource, true, precompiled));
+                independent &= known != null && !known.definesOtherClasses();
+            }
+        } finally {
+            compiling.values().forEach(f -> f.cancel(true));
+        }
+    }
+
+    private Map<String, Future<Precompiled>> precompile(Map<String, String> scripts) {
+        Map<String, Future<Precompiled>> compiling = new HashMap<>();
+        Supplier<CompilerConfiguration> configFactory = this.configFactory;
+        int threads = COMPILE_THREADS;
+        if (threads <= 1
+                || decoratedCompilation
+                || scripts.size() < 2
+                || execution == null
+                || configFactory == null
+                || !(getClassLoader() instanceof CleanGroovyClassLoader)) {
+            return compiling;
+        }
+        CleanGroovyClassLoader loader = (CleanGroovyClassLoader) getClassLoader();
+        ThreadPoolExecutor pool = compilers(threads);
+        for (Map.Entry<String, String> e : scripts.entrySet()) {
+            GroovyCodeSource codeSource = new GroovyCodeSource(e.getValue(), e.getKey(), DEFAULT_CODE_BASE);
+            if (cachedEntry(codeSource, true) != null) {
+                continue;
+            }
+            compiling.put(e.getKey(), pool.submit(() -> {
+                try (GroovySandbox.Scope scope = sandbox().enter()) {
+                    return loader.compile(codeSource, configFactory.get());
+                }
+            }));
+        }
+        return compiling;
+    }
+
+    static synchronized ThreadPoolExecutor compilers(int threads) {
+        if (compilers == null) {
+            compilers = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    60L,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "CpsGroovyShell.compiler"));
+            compilers.allowCoreThreadTimeOut(true);
+        } else if (compilers.getCorePoolSize() != threads) {
+            // COMPILE_THREADS was changed, as from the script console; the core size may never exceed the maximum
+            if (threads > compilers.getMaximumPoolSize()) {
+                compilers.setMaximumPoolSize(threads);
+                compilers.setCorePoolSize(threads);
+            } else {
+                compilers.setCorePoolSize(threads);
+                compilers.setMaximumPoolSize(threads);
+            }
+        }
+        return compilers;
+    }
+
+    /**
+     * @return null if the script should just be compiled in turn, which will report any errors
+     */
+    private @CheckForNull Precompiled await(Future<Precompiled> f, GroovyCodeSource codeSource) {
+        try (CpsFlowExecution.Timing t =
+                execution != null ? execution.time(CpsFlowExecution.TimingKind.parse) : null) {
+            return f.get();
+        } catch (ExecutionException x) {
+            LOGGER.log(Level.FINE, "could not compile " + codeSource.getName() + " on its own", x);
+            return null;
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
     private Script doParse(GroovyCodeSource codeSource) throws CompilationFailedException {
+        return doParse(codeSource, false, null);
+    }
+
+    private GroovySandbox sandbox() {
         GroovySandbox sandbox = new GroovySandbox();
         if (execution != null) {
             sandbox.withWhitelist(new GroovyClassLoaderWhitelist(
@@ -196,10 +716,101 @@ class CpsGroovyShell extends GroovyShell {
         } else {
             sandbox.withWhitelist(new GroovyClassLoaderWhitelist(Whitelist.all(), getClassLoader()));
         }
-        try (GroovySandbox.Scope scope = sandbox.enter()) {
+        return sandbox;
+    }
+
+    /**
+     * Looks up classes compiled earlier for a source, in {@link CompiledScripts} and then {@link ScriptClassCache}.
+     * @param cacheable whether {@link ScriptClassCache} may be consulted
+     */
+    private @CheckForNull ScriptClassCache.Entry cachedEntry(GroovyCodeSource codeSource, boolean cacheable) {
+        CompiledScripts compiledScripts = execution != null ? execution.getCompiledScripts() : null;
+        return cachedEntry(
+                compiledScripts,
+                compiledScripts != null ? buildKey(codeSource) : null,
+                cacheable ? cacheKey(codeSource) : null);
+    }
+
+    private static @CheckForNull ScriptClassCache.Entry cachedEntry(
+            @CheckForNull CompiledScripts compiledScripts,
+            @CheckForNull ScriptClassCache.Key buildKey,
+            @CheckForNull ScriptClassCache.Key key) {
+        ScriptClassCache.Entry entry =
+                compiledScripts != null && buildKey != null ? compiledScripts.get(buildKey) : null;
+        if (entry == null && key != null) {
+            entry = ScriptClassCache.get(key);
+        }
+        return entry;
+    }
+
+    /**
+     * @param cacheable whether compiled classes may be taken from, or stored in, {@link ScriptClassCache}
+     * @param precompiled the result of {@link CleanGroovyClassLoader#compile}, to define rather than compiling again
+     */
+    private Script doParse(GroovyCodeSource codeSource, boolean cacheable, @CheckForNull Precompiled precompiled)
+            throws CompilationFailedException {
+        try (GroovySandbox.Scope scope = sandbox().enter()) {
             if (execution != null) {
-                try (CpsFlowExecution.Timing t = execution.time(CpsFlowExecution.TimingKind.parse)) {
-                    return scope.parse(CpsGroovyShell.this, codeSource);
+                // precompiled classes were timed as parse where they were compiled
+                try (CpsFlowExecution.Timing t = execution.time(
+                        precompiled != null
+                                ? CpsFlowExecution.TimingKind.defineCompiled
+                                : CpsFlowExecution.TimingKind.parse)) {
+                    ScriptClassCache.Key key = cacheable ? cacheKey(codeSource) : null;
+                    CompiledScripts compiledScripts = execution.getCompiledScripts();
+                    ScriptClassCache.Key buildKey = compiledScripts != null ? buildKey(codeSource) : null;
+                    if (key == null && buildKey == null && precompiled == null) {
+                        return scope.parse(CpsGroovyShell.this, codeSource);
+                    }
+                    CleanGroovyClassLoader loader = (CleanGroovyClassLoader) getClassLoader();
+                    ScriptClassCache.Entry entry = cachedEntry(compiledScripts, buildKey, key);
+                    if (entry != null) {
+                        try (CpsFlowExecution.Timing t2 = execution.time(CpsFlowExecution.TimingKind.parseCacheHit)) {
+                            Class<?> c = loader.defineCachedClasses(entry, codeSource, config);
+                            if (c != null) {
+                                LOGGER.fine(() -> "reusing compiled " + codeSource.getName() + " for " + execution);
+                                Script s = InvokerHelper.createScript(c, getContext());
+                                if (buildKey != null) {
+                                    compiledScripts.put(buildKey, entry);
+                                }
+                                return s;
+                            }
+                        }
+                    }
+                    try (CpsFlowExecution.Timing t2 =
+                            precompiled != null ? null : execution.time(CpsFlowExecution.TimingKind.parseCacheMiss)) {
+                        ScriptClassCache.Recorder recorder;
+                        Script s;
+                        Class<?> c = precompiled != null
+                                ? loader.defineCachedClasses(precompiled.entry, codeSource, config)
+                                : null;
+                        if (c != null) {
+                            recorder = precompiled.recorder;
+                            s = InvokerHelper.createScript(c, getContext());
+                        } else {
+                            recorder = new ScriptClassCache.Recorder();
+                            loader.recorder = recorder;
+                            try {
+                                s = scope.parse(CpsGroovyShell.this, codeSource);
+                            } finally {
+                                loader.recorder = null;
+                            }
+                        }
+                        String mainClass = s.getClass().getName();
+                        ScriptClassCache.Entry compiled = recorder.toEntry(mainClass);
+                        // compiling may have added libraries to the class path, as @Library does
+                        if (key != null && compiled != null && cacheKey(codeSource) != null) {
+                            ScriptClassCache.put(key, compiled);
+                        }
+                        if (compiledScripts != null) {
+                            ScriptClassCache.Key compiledKey = buildKey(codeSource);
+                            ScriptClassCache.Entry withClassPath = recorder.toEntryWithClassPath(mainClass);
+                            if (compiledKey != null && withClassPath != null) {
+                                compiledScripts.put(compiledKey, withClassPath);
+                            }
+                        }
+                        return s;
+                    }
                 }
             } else {
                 return scope.parse(CpsGroovyShell.this, codeSource);
@@ -207,14 +818,68 @@ class CpsGroovyShell extends GroovyShell {
         }
     }
 
+    /**
+     * @return null if the compiled classes for this source may not be shared with other builds
+     */
+    private @CheckForNull ScriptClassCache.Key cacheKey(GroovyCodeSource codeSource) {
+        if (compilationFingerprint == null || !ScriptClassCache.isEnabled()) {
+            return null;
+        }
+        if (!(getClassLoader() instanceof CleanGroovyClassLoader)
+                || ((CleanGroovyClassLoader) getClassLoader()).hasExtendedClassPath()) {
+            return null;
+        }
+        return new ScriptClassCache.Key(
+                codeSource.getName(), codeSource.getScriptText(),
+                execution != null && execution.isSandbox(),
+                compilationFingerprint);
+    }
+
+    /**
+     * Like {@link #cacheKey} but for {@link CompiledScripts}, which belong to a single build.
+     * @return null if the compiled classes for this source may not be saved
+     */
+    private @CheckForNull ScriptClassCache.Key buildKey(GroovyCodeSource codeSource) {
+        if (compilationFingerprint == null || !(getClassLoader() instanceof CleanGroovyClassLoader)) {
+            return null;
+        }
+        return new ScriptClassCache.Key(
+                codeSource.getName(),
+                codeSource.getScriptText(),
+                execution != null && execution.isSandbox(),
+                ScriptClassCache.digest(compilationFingerprint + '|' + GroovySystem.getVersion() + '|'
+                        + ((CleanGroovyClassLoader) getClassLoader()).classPath()));
+    }
+
+    /**
+     * Classes compiled by {@link CleanGroovyClassLoader#compile} but not yet defined.
+     */
+    private static final class Precompiled {
+        final ScriptClassCache.Recorder recorder;
+        final ScriptClassCache.Entry entry;
+
+        Precompiled(ScriptClassCache.Recorder recorder, ScriptClassCache.Entry entry) {
+            this.recorder = recorder;
+            this.entry = entry;
+        }
+    }
+
     /**
      * Every script we parse get caught into {@code execution.loadedScripts}, so the size
      * yields a unique enough ID.
+     * Scripts still being compiled by {@link #parseAsync} are counted too,
+     * and a name already taken because such a script failed to compile is skipped.
      */
     @Override
     protected synchronized String generateScriptName() {
-        if (execution != null) return "Script" + (execution.loadedScripts.size() + 1) + ".groovy";
-        else return super.generateScriptName();
+        if (execution == null) {
+            return super.generateScriptName();
+        }
+        int n = execution.loadedScripts.size() + reservedScriptNames.size() + 1;
+        while (execution.loadedScripts.containsKey("Script" + n) || reservedScriptNames.contains("Script" + n)) {
+            n++;
+        }
+        return "Script" + n + ".groovy";
     }
 
     static class TimingLoader extends ClassLoader {
@@ -6,10 +6,12 @@ import com.cloudbees.groovy.cps.SandboxCpsTransformer;
 import com.cloudbees.groovy.cps.TransformerConfiguration;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import groovy.lang.GroovyShell;
 import java.util.ArrayList;
 import java.util.List;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.customizers.ImportCustomizer;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.GroovySandbox;
@@ -20,10 +22,23 @@ import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.GroovySandbox;
  * @author Kohsuke Kawaguchi
  */
 class CpsGroovyShellFactory {
+    /**
+     * Whether to compile methods which provably never suspend as if they were {@link NonCPS}.
+     * Off by default until the analysis has seen wider use.
+     * @see TransformerConfiguration#withNonCpsInference
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static boolean INFER_NON_CPS =
+            SystemProperties.getBoolean(CpsGroovyShellFactory.class.getName() + ".INFER_NON_CPS", false);
+
     private final @CheckForNull CpsFlowExecution execution;
     private boolean sandbox;
     private List<GroovyShellDecorator> decorators;
     private ClassLoader parent;
+    /**
+     * {@link CpsGroovyShell#getCompilationFingerprint} of the shell whose loader is {@link #parent}, if known.
+     */
+    private @CheckForNull String parentFingerprint;
 
     /**
      * @param execution
@@ -51,7 +66,9 @@ class CpsGroovyShellFactory {
         for (GroovyShellDecorator d : decorators) {
             inner.add(d.forTrusted());
         }
-        return new CpsGroovyShellFactory(execution, false, parent, inner);
+        CpsGroovyShellFactory f = new CpsGroovyShellFactory(execution, false, parent, inner);
+        f.parentFingerprint = parentFingerprint;
+        return f;
     }
 
     /**
@@ -64,7 +81,11 @@ class CpsGroovyShellFactory {
     }
 
     public CpsGroovyShellFactory withParent(GroovyShell parent) {
-        return withParent(parent.getClassLoader());
+        withParent(parent.getClassLoader());
+        if (parent instanceof CpsGroovyShell) {
+            parentFingerprint = ((CpsGroovyShell) parent).getCompilationFingerprint();
+        }
+        return this;
     }
 
     /**
@@ -72,6 +93,7 @@ class CpsGroovyShellFactory {
      */
     public CpsGroovyShellFactory withParent(ClassLoader parent) {
         this.parent = parent;
+        this.parentFingerprint = null;
         return this;
     }
 
@@ -79,7 +101,8 @@ class CpsGroovyShellFactory {
         CpsTransformer t = sandbox ? new SandboxCpsTransformer() : new CpsTransformer();
         t.setConfiguration(new TransformerConfiguration()
                 .withClosureType(CpsClosure2.class)
-                .withSafepoint(Safepoint.class, "safepoint"));
+                .withSafepoint(Safepoint.class, "safepoint")
+                .withNonCpsInference(INFER_NON_CPS));
         return t;
     }
 
@@ -99,6 +122,14 @@ class CpsGroovyShellFactory {
         return cc;
     }
 
+    /**
+     * The compiler configuration of a trusted shell belonging to no build, for {@link TrustedClassCache},
+     * whose classes outlive any one build.
+     */
+    static CompilerConfiguration makeSharedConfig() {
+        return new CpsGroovyShellFactory(null).forTrusted().makeConfig();
+    }
+
     private ImportCustomizer makeImportCustomizer() {
         ImportCustomizer ic = new ImportCustomizer();
         ic.addStarImports(NonCPS.class.getPackage().getName());
@@ -110,16 +141,53 @@ class CpsGroovyShellFactory {
         return ic;
     }
 
-    private ClassLoader makeClassLoader() {
+    /**
+     * The default parent loader of shells, which is also used by {@link TrustedClassCache}.
+     */
+    static ClassLoader makeClassLoader(@CheckForNull CpsFlowExecution execution) {
         ClassLoader cl = Jenkins.get().getPluginManager().uberClassLoader;
-        return new GroovySourceFileAllowlist.ClassLoaderImpl(execution, GroovySandbox.createSecureClassLoader(cl));
+        return new GroovySourceFileAllowlist.ClassLoaderImpl(
+                execution, MissingClassCache.wrap(GroovySandbox.createSecureClassLoader(cl)));
+    }
+
+    /**
+     * Summarizes everything other than the source which determines the output of compilation with the built shell.
+     * @return null if that cannot be determined
+     * @see ScriptClassCache
+     */
+    private @CheckForNull String makeCompilationFingerprint() {
+        StringBuilder b = new StringBuilder();
+        if (parent == null) {
+            b.append(ScriptClassCache.pluginsFingerprint());
+        } else if (parentFingerprint != null) {
+            b.append('(').append(parentFingerprint).append(')');
+        } else {
+            return null;
+        }
+        b.append(sandbox ? ";sandbox" : ";trusted");
+        b.append(INFER_NON_CPS ? ";inferNonCps" : "");
+        for (GroovyShellDecorator d : decorators) {
+            String f = d.getCompilationFingerprint(execution);
+            if (f == null) {
+                return null;
+            }
+            b.append(';').append(f);
+        }
+        return b.toString();
     }
 
     public CpsGroovyShell build() {
         ClassLoader parent = this.parent;
-        if (parent == null) parent = makeClassLoader();
-
-        CpsGroovyShell shell = new CpsGroovyShell(parent, execution, makeConfig());
+        if (parent == null) parent = makeClassLoader(execution);
+
+        String fingerprint = execution != null
+                        && (ScriptClassCache.isEnabled() || CompiledScripts.ENABLED || TrustedClassCache.isEnabled())
+                ? makeCompilationFingerprint()
+                : null;
+        CpsGroovyShell shell = new CpsGroovyShell(parent, execution, makeConfig(), fingerprint);
+        shell.configFactory = this::makeConfig;
+        shell.shareable = !sandbox && this.parent == null;
+        shell.decoratedCompilation = decorators.stream().anyMatch(GroovyShellDecorator::affectsCompilation);
 
         for (GroovyShellDecorator d : decorators) {
             d.configureShell(execution, shell);
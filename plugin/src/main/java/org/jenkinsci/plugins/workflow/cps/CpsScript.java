@@ -179,6 +179,10 @@ public abstract class CpsScript extends SerializableScript {
 
     @Override
     public Object evaluate(String script) throws CompilationFailedException {
+        if ((CpsGroovyShell.ASYNC_COMPILATION || CpsGroovyShell.REUSE_SCRIPTS) && CpsThread.current() != null) {
+            // suspends this thread while the script is compiled, unless it can be reused, then runs it
+            return ScriptCompilation.evaluate(script);
+        }
         // this might throw the magic CpsCallableInvocation to execute the script asynchronously
         return $getShell().evaluate(script);
     }
@@ -411,7 +411,7 @@ public class CpsStepContext extends DefaultStepContext { // TODO add XStream cla
                 }
             }
 
-            flow.runInCpsVmThread(new FutureCallback<>() {
+            flow.runInCpsVmThreadBatched(new FutureCallback<>() {
                 @CpsVmThreadOnly
                 @Override
                 public void onSuccess(CpsThreadGroup g) {
@@ -601,9 +601,16 @@ public class CpsStepContext extends DefaultStepContext { // TODO add XStream cla
                         // and do not bother resaving it in that case
                         if (result.getExecution().getDurabilityHint().isPersistWithEveryStep()) {
                             result.getExecution().getStorage().flush();
-                            result.saveProgram();
+                            result.saveProgram().whenComplete((v, x) -> {
+                                if (x != null) {
+                                    f.setException(x);
+                                } else {
+                                    f.set(null);
+                                }
+                            });
+                        } else {
+                            f.set(null);
                         }
-                        f.set(null);
                     } catch (Exception x) {
                         f.setException(x);
                     }
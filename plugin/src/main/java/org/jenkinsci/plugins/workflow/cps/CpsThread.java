@@ -293,7 +293,8 @@ public final class CpsThread implements Serializable {
         }
         resumeValue = v;
         promise = new CompletableFuture<>();
-        group.scheduleRun();
+        group.markReady(this);
+        group.requestRun();
         return promise;
     }
 
@@ -26,6 +26,7 @@ package org.jenkinsci.plugins.workflow.cps;
 
 import com.cloudbees.groovy.cps.Continuable;
 import com.cloudbees.groovy.cps.Outcome;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.Converter;
@@ -35,6 +36,7 @@ import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import groovy.lang.Closure;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
@@ -44,29 +46,41 @@ import hudson.Main;
 import hudson.Util;
 import hudson.init.Terminator;
 import hudson.model.Result;
+import hudson.remoting.SingleLaneExecutorService;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import hudson.util.XStream2;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import jenkins.util.Timer;
 import org.jenkinsci.plugins.workflow.actions.ErrorAction;
 import org.jenkinsci.plugins.workflow.cps.persistence.PersistIn;
@@ -75,6 +89,7 @@ import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.pickles.Pickle;
 import org.jenkinsci.plugins.workflow.pickles.PickleFactory;
 import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.jenkinsci.plugins.workflow.support.concurrent.WithThreadName;
 import org.jenkinsci.plugins.workflow.support.pickles.SingleTypedPickleFactory;
 import org.jenkinsci.plugins.workflow.support.pickles.serialization.RiverWriter;
@@ -121,11 +136,98 @@ public final class CpsThreadGroup implements Serializable {
      * Ensures only one thread updates CPS VM state at any given time
      * by queueing such tasks in here.
      */
-    transient ExecutorService runner;
+    transient CpsVmExecutorService runner;
 
     /** Set while {@link #runner} is doing something. */
     transient boolean busy;
 
+    /**
+     * Callbacks waiting to be run on the CPS VM thread by a single task.
+     * @see #deliver
+     */
+    private transient ConcurrentLinkedQueue<FutureCallback<CpsThreadGroup>> inbox;
+
+    /** Set while a task to drain {@link #inbox} is queued in {@link #runner}. */
+    private transient AtomicBoolean inboxScheduled;
+
+    /** Set while {@link #drainInbox} is running callbacks, so {@link #requestRun} can be deferred. */
+    private transient boolean drainingInbox;
+
+    /** Set if {@link #requestRun} was called while {@link #drainingInbox}. */
+    private transient boolean runRequested;
+
+    /**
+     * How long, in milliseconds, a {@link CpsThread} may keep running past {@link Safepoint}s
+     * before it yields the CPS VM thread. Zero makes every safepoint yield.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    public static long SAFEPOINT_TIME_BUDGET_MS =
+            SystemProperties.getLong(CpsThreadGroup.class.getName() + ".SAFEPOINT_TIME_BUDGET_MS", 20L);
+
+    /**
+     * How many {@link Safepoint}s a {@link CpsThread} may pass in one chunk before it yields the CPS VM thread,
+     * regardless of {@link #SAFEPOINT_TIME_BUDGET_MS}.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    public static int SAFEPOINT_STEP_BUDGET =
+            SystemProperties.getInteger(CpsThreadGroup.class.getName() + ".SAFEPOINT_STEP_BUDGET", 10000);
+
+    /**
+     * How long, in milliseconds, one turn of {@link #run} may keep running chunks of successive {@link CpsThread}s
+     * before the build goes back in line behind other builds waiting for {@link CpsVmExecutorService}.
+     * Zero (the default) lets a turn run every runnable thread.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    public static long TURN_TIME_SLICE_MS =
+            SystemProperties.getLong(CpsThreadGroup.class.getName() + ".TURN_TIME_SLICE_MS", 0L);
+
+    /**
+     * Whether {@link #saveProgram()} may return once the program has been serialized,
+     * leaving it to a background thread to move the file into place.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    public static boolean ASYNC_PROGRAM_WRITES =
+            SystemProperties.getBoolean(CpsThreadGroup.class.getName() + ".ASYNC_PROGRAM_WRITES", true);
+
+    /**
+     * Whether to force the program data file to disk before moving it into place.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    public static boolean FSYNC_PROGRAM =
+            SystemProperties.getBoolean(CpsThreadGroup.class.getName() + ".FSYNC_PROGRAM");
+
+    /**
+     * Seconds a build may go without any runnable threads, typically while waiting for a long-running step,
+     * before its program is {@linkplain #checkpointIdle checkpointed}; zero disables this.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    public static long IDLE_CHECKPOINT_SECONDS =
+            SystemProperties.getLong(CpsThreadGroup.class.getName() + ".IDLE_CHECKPOINT_SECONDS", 0L);
+
+    /**
+     * Shared by the {@link #programWriter}s of all builds.
+     */
+    private static final ExecutorService programWriters = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "CpsThreadGroup.programWriter"));
+
+    /**
+     * Member threads which are {@linkplain CpsThread#isRunnable runnable}, in the order they should next get a chunk.
+     * Threads enter in {@link CpsThread#resume} and leave when {@link #run} gives them a chunk,
+     * going back to the end if they are still runnable afterwards.
+     * May contain threads which have since completed; those are skipped.
+     */
+    private transient LinkedHashSet<CpsThread> readyThreads;
+
+    /**
+     * {@link System#nanoTime} after which the chunk currently being run should yield at its next {@link Safepoint}.
+     */
+    private transient long chunkDeadline;
+
+    /**
+     * Number of further {@link Safepoint}s the chunk currently being run may pass without yielding.
+     */
+    private transient int safepointsRemaining;
+
     /**
      * True if the build was automatically paused because quiet mode is enabled.
      * Used to avoid printing more than one pause message or scheduling more than one resumption task per build.
@@ -157,6 +259,30 @@ public final class CpsThreadGroup implements Serializable {
      */
     private boolean executionPaused;
 
+    /**
+     * Moves serialized snapshots into place, in the order they were taken, off the CPS VM thread.
+     */
+    private transient ExecutorService programWriter;
+
+    /**
+     * The most recent snapshot handed to {@link #programWriter}; any earlier one still queued for the same file is stale.
+     */
+    private transient volatile @CheckForNull ProgramSnapshot latestProgramSnapshot;
+
+    /**
+     * Completes once {@link #latestProgramSnapshot} (and so every snapshot before it) has been written.
+     */
+    private transient volatile CompletableFuture<Void> programWritten;
+
+    /** {@link System#nanoTime} when {@link #run} last ran. */
+    private transient volatile long lastActive;
+
+    /** Pending check whether to {@link #checkpointIdle}; only accessed from the CPS VM thread. */
+    private transient @CheckForNull ScheduledFuture<?> idleCheckpoint;
+
+    /** Set by {@link #checkpointIdle} until {@link #run} next runs. */
+    private transient volatile boolean checkpointedWhileIdle;
+
     /**
      * "Exported" closures that are referenced by live {@link CpsStepContext}s.
      */
@@ -164,6 +290,19 @@ public final class CpsThreadGroup implements Serializable {
 
     private final @CheckForNull List<Script> scripts = new ArrayList<>();
 
+    /**
+     * Compilations which threads are waiting for, to be started again should the program be loaded from disk.
+     * Null only while an older program is being deserialized.
+     */
+    private List<ScriptCompilation> compilations = new CopyOnWriteArrayList<>();
+
+    /**
+     * Names of script classes keyed by a digest of the source they were parsed from,
+     * so that {@link CpsFlowExecution#reuseScript} can run them again.
+     * Null only while an older program is being deserialized.
+     */
+    private Map<String, String> scriptsBySource = new HashMap<>();
+
     CpsThreadGroup(CpsFlowExecution execution) {
         this.execution = execution;
         setupTransients();
@@ -173,6 +312,47 @@ public final class CpsThreadGroup implements Serializable {
         return execution;
     }
 
+    @CpsVmThreadOnly
+    void compiling(ScriptCompilation compilation) {
+        compilations.add(compilation);
+    }
+
+    @CpsVmThreadOnly
+    void compiled(ScriptCompilation compilation) {
+        compilations.remove(compilation);
+    }
+
+    /**
+     * Looks up the class of a script parsed earlier from the same source.
+     * @return a class name, or null
+     */
+    @CpsVmThreadOnly
+    @CheckForNull
+    String getParsedScript(String source) {
+        return scriptsBySource.get(ScriptClassCache.digest(source));
+    }
+
+    @CpsVmThreadOnly
+    void parsedScript(String source, Script script) {
+        scriptsBySource.put(ScriptClassCache.digest(source), script.getClass().getName());
+    }
+
+    /**
+     * Whether any thread is waiting for a {@link ScriptCompilation}.
+     */
+    boolean isCompiling() {
+        return !compilations.isEmpty();
+    }
+
+    /**
+     * Called once the program has been loaded, to start again any compilations interrupted by a restart.
+     */
+    void resumeCompilations() {
+        for (ScriptCompilation compilation : compilations) {
+            compilation.start(execution);
+        }
+    }
+
     /** Track a script so that we can fix up its {@link Script#getBinding}s after deserialization. */
     void register(Script script) {
         if (scripts != null) {
@@ -186,6 +366,12 @@ public final class CpsThreadGroup implements Serializable {
         setupTransients();
         assert execution != null;
         runtimeThreads.putAll(threads);
+        // the ready queue is not persisted; threads which were runnable when saved go in ID order, as they used to
+        for (CpsThread t : runtimeThreads.values()) {
+            if (t.isRunnable()) {
+                markReady(t);
+            }
+        }
         // compatibility: the field will be null in old programs
         if (scripts != null && !scripts.isEmpty()) {
             GroovyShell shell = execution.getShell();
@@ -196,6 +382,12 @@ public final class CpsThreadGroup implements Serializable {
                 script.setBinding(shell.getContext());
             }
         }
+        if (compilations == null) { // field added later
+            compilations = new CopyOnWriteArrayList<>();
+        }
+        if (scriptsBySource == null) { // field added later
+            scriptsBySource = new HashMap<>();
+        }
         if (paused == null) { // introduced and later removed from serial form
             paused = new AtomicBoolean(executionPaused);
         }
@@ -204,7 +396,13 @@ public final class CpsThreadGroup implements Serializable {
 
     private void setupTransients() {
         runtimeThreads = new ConcurrentSkipListMap<>();
+        readyThreads = new LinkedHashSet<>();
+        inbox = new ConcurrentLinkedQueue<>();
+        inboxScheduled = new AtomicBoolean();
         runner = new CpsVmExecutorService(this);
+        programWriter = new SingleLaneExecutorService(programWriters);
+        programWritten = CompletableFuture.completedFuture(null);
+        lastActive = System.nanoTime();
         pausedByQuietMode = new AtomicBoolean();
     }
 
@@ -383,6 +581,8 @@ public final class CpsThreadGroup implements Serializable {
                                 public void run() {
                                     if (runtimeThreads.isEmpty()) {
                                         runner.shutdown();
+                                    } else {
+                                        scheduleIdleCheckpoint();
                                     }
                                     // the original promise of scheduleRun() is now complete
                                     f.complete(null);
@@ -403,6 +603,76 @@ public final class CpsThreadGroup implements Serializable {
         return f;
     }
 
+    /**
+     * Like {@link #scheduleRun}, except that when called from a callback being run by {@link #drainInbox},
+     * the run is scheduled only once all the callbacks are done.
+     */
+    void requestRun() {
+        if (drainingInbox && current() == this) {
+            runRequested = true;
+        } else {
+            scheduleRun();
+        }
+    }
+
+    /**
+     * Runs a callback on the CPS VM thread, together with any others delivered before it got a chance to run.
+     * @see CpsFlowExecution#runInCpsVmThreadBatched
+     */
+    void deliver(FutureCallback<CpsThreadGroup> callback) {
+        inbox.add(callback);
+        if (inboxScheduled.compareAndSet(false, true)) {
+            try {
+                runner.submit(this::drainInbox);
+            } catch (RejectedExecutionException x) {
+                inboxScheduled.set(false);
+                throw x;
+            }
+        }
+    }
+
+    @CpsVmThreadOnly("root")
+    private void drainInbox() {
+        // reset first, so that anything delivered from now on is either polled below or schedules another drain
+        inboxScheduled.set(false);
+        RuntimeException runtimeProblem = null;
+        Error error = null;
+        drainingInbox = true;
+        try {
+            FutureCallback<CpsThreadGroup> callback;
+            while ((callback = inbox.poll()) != null) {
+                try {
+                    callback.onSuccess(this);
+                } catch (RuntimeException x) {
+                    if (runtimeProblem == null) {
+                        runtimeProblem = x;
+                    } else {
+                        runtimeProblem.addSuppressed(x);
+                    }
+                } catch (Error x) {
+                    if (error == null) {
+                        error = x;
+                    } else {
+                        error.addSuppressed(x);
+                    }
+                }
+            }
+        } finally {
+            drainingInbox = false;
+        }
+        if (runRequested) {
+            runRequested = false;
+            scheduleRun();
+        }
+        // as if each callback had been its own task, let CpsVmExecutorService report the first problem
+        if (error != null) {
+            throw error;
+        }
+        if (runtimeProblem != null) {
+            throw runtimeProblem;
+        }
+    }
+
     /**
      * Pauses the execution.
      * @param persist whether this is a user-initiated pause that should be persisted
@@ -457,10 +727,28 @@ public final class CpsThreadGroup implements Serializable {
         boolean changed = false;
         boolean ending = false;
         boolean stillRunnable = false;
+        long turnStart = System.nanoTime();
+        lastActive = turnStart;
+        checkpointedWhileIdle = false;
+        // Each thread ready at the start of the turn gets one chunk, round robin;
+        // threads made ready during the turn wait for the next one.
+        List<CpsThread> turn = takeReadyThreads();
 
-        // TODO: maybe instead of running all the thread, run just one thread in round robin
-        for (CpsThread t : runtimeThreads.values().toArray(new CpsThread[runtimeThreads.size()])) {
-            if (t.isRunnable()) {
+        for (int i = 0; i < turn.size(); i++) {
+            CpsThread t = turn.get(i);
+            if (t.isRunnable() && runtimeThreads.get(t.id) == t) {
+                if (changed
+                        && (paused.get()
+                                || TURN_TIME_SLICE_MS > 0
+                                        && System.nanoTime() - turnStart
+                                                >= TimeUnit.MILLISECONDS.toNanos(TURN_TIME_SLICE_MS))) {
+                    // Let other builds, or a pause request, have the CPS VM thread;
+                    // the rest of this turn goes first in the next one.
+                    putBackReadyThreads(turn.subList(i, turn.size()));
+                    stillRunnable = true;
+                    break;
+                }
+                startChunk();
                 Outcome o = t.runNextChunk();
                 if (o.isFailure()) {
                     assert !t.isAlive(); // failed thread is non-resumable
@@ -508,8 +796,9 @@ public final class CpsThreadGroup implements Serializable {
                         }
                         ending = true;
                     }
-                } else {
-                    stillRunnable |= t.isRunnable();
+                } else if (t.isRunnable()) {
+                    markReady(t);
+                    stillRunnable = true;
                 }
                 changed = true;
             }
@@ -529,7 +818,8 @@ public final class CpsThreadGroup implements Serializable {
                 closures.clear();
             }
             try {
-                Util.deleteFile(execution.getProgramDataFile());
+                deleteProgram(execution.getProgramDataFile());
+                Util.deleteFile(execution.getCompiledScriptsFile());
             } catch (IOException x) {
                 LOGGER.log(Level.WARNING, "Failed to delete program.dat in " + execution, x);
             }
@@ -538,6 +828,57 @@ public final class CpsThreadGroup implements Serializable {
         return stillRunnable;
     }
 
+    /**
+     * Called when a member thread becomes {@linkplain CpsThread#isRunnable runnable}.
+     */
+    void markReady(CpsThread t) {
+        synchronized (readyThreads) {
+            readyThreads.add(t);
+        }
+    }
+
+    @CpsVmThreadOnly
+    private List<CpsThread> takeReadyThreads() {
+        synchronized (readyThreads) {
+            List<CpsThread> ready = new ArrayList<>(readyThreads);
+            readyThreads.clear();
+            return ready;
+        }
+    }
+
+    @CpsVmThreadOnly
+    private void putBackReadyThreads(List<CpsThread> skipped) {
+        synchronized (readyThreads) {
+            LinkedHashSet<CpsThread> ready = new LinkedHashSet<>(skipped);
+            ready.addAll(readyThreads);
+            readyThreads.clear();
+            readyThreads.addAll(ready);
+        }
+    }
+
+    /**
+     * Resets the {@link Safepoint} budget before running a chunk of a {@link CpsThread}.
+     */
+    @CpsVmThreadOnly
+    private void startChunk() {
+        chunkDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SAFEPOINT_TIME_BUDGET_MS);
+        safepointsRemaining = SAFEPOINT_STEP_BUDGET;
+    }
+
+    /**
+     * Called from a {@link Safepoint} to decide whether the current chunk should yield the CPS VM thread,
+     * so that other threads, interrupts, and pause requests get a turn.
+     *
+     * @return true once the chunk has used up its step or time budget
+     */
+    @CpsVmThreadOnly
+    boolean isSafepointBudgetExhausted() {
+        if (--safepointsRemaining <= 0 || paused.get() || terminating) {
+            return true;
+        }
+        return System.nanoTime() - chunkDeadline >= 0;
+    }
+
     private transient List<FlowNode> nodesToNotify;
     private static final Object nodesToNotifyLock = new Object();
     /**
@@ -574,6 +915,61 @@ public final class CpsThreadGroup implements Serializable {
         return CpsThreadDump.from(this);
     }
 
+    @CpsVmThreadOnly
+    private void scheduleIdleCheckpoint() {
+        long after = IDLE_CHECKPOINT_SECONDS;
+        if (after <= 0 || checkpointedWhileIdle || idleCheckpoint != null && !idleCheckpoint.isDone()) {
+            return;
+        }
+        idleCheckpoint = Timer.get()
+                .schedule(
+                        () -> {
+                            try {
+                                runner.submit(this::checkpointIfIdle);
+                            } catch (RejectedExecutionException x) {
+                                LOGGER.log(Level.FINE, "not checkpointing idle " + execution, x);
+                            }
+                        },
+                        after,
+                        TimeUnit.SECONDS);
+    }
+
+    @CpsVmThreadOnly
+    private void checkpointIfIdle() {
+        idleCheckpoint = null;
+        if (checkpointedWhileIdle || runtimeThreads.isEmpty() || paused.get() || terminating) {
+            return;
+        }
+        if (System.nanoTime() - lastActive < TimeUnit.SECONDS.toNanos(IDLE_CHECKPOINT_SECONDS)) {
+            scheduleIdleCheckpoint(); // something ran in the meantime
+            return;
+        }
+        for (CpsThread t : runtimeThreads.values()) {
+            if (t.isRunnable()) {
+                return;
+            }
+        }
+        checkpointIdle();
+    }
+
+    /**
+     * Saves the program of a build which has been idle for {@link #IDLE_CHECKPOINT_SECONDS},
+     * regardless of {@link CpsFlowExecution#getDurabilityHint},
+     * so that nothing is lost should Jenkins go down during a long wait.
+     * The program itself stays in memory, since {@link StepExecution}s, {@link CpsStepContext}s and
+     * {@link CpsBodyExecution}s of the running steps refer to it, and they are only ever replaced across a restart.
+     */
+    @CpsVmThreadOnly
+    private void checkpointIdle() {
+        LOGGER.fine(() -> "checkpointing idle " + execution);
+        saveProgramIfPossible(true);
+        checkpointedWhileIdle = true;
+    }
+
+    boolean isCheckpointedWhileIdle() {
+        return checkpointedWhileIdle;
+    }
+
     /**
      * Like {@link #saveProgram()} but will not fail.
      * @param enteringQuietState True if we're moving to quiet state - pausing or quieting down and need to write the program.
@@ -593,7 +989,10 @@ public final class CpsThreadGroup implements Serializable {
             }
 
             try {
-                saveProgram();
+                saveProgram().exceptionally(x -> {
+                    LOGGER.log(Level.WARNING, "program state save failed", x);
+                    return null;
+                });
             } catch (IOException x) {
                 LOGGER.log(Level.WARNING, "program state save failed", x);
             }
@@ -602,19 +1001,48 @@ public final class CpsThreadGroup implements Serializable {
 
     /**
      * Persists the current state of {@link CpsThreadGroup}.
+     * The program is serialized before this method returns, but unless {@link #ASYNC_PROGRAM_WRITES} is disabled,
+     * it is written to disk in the background.
+     * @return completes when the snapshot is in place
+     * @throws IOException if the program could not be serialized
      */
     @CpsVmThreadOnly
-    void saveProgram() throws IOException {
+    CompletableFuture<Void> saveProgram() throws IOException {
         if (execution.isResumeBlocked()) {
             // In case flag added after start, also consider: Util.deleteFile(execution.getProgramDataFile());
-            return;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompiledScripts compiledScripts = execution.getCompiledScripts();
+        Map<ScriptClassCache.Key, ScriptClassCache.Entry> classes =
+                compiledScripts != null ? compiledScripts.takePending() : null;
+        if (classes != null) {
+            File classesFile = execution.getCompiledScriptsFile();
+            programWriter.execute(() -> {
+                try {
+                    CompiledScripts.append(classesFile, classes);
+                } catch (IOException x) {
+                    LOGGER.log(Level.WARNING, "failed to save " + classesFile, x);
+                }
+            });
         }
         File f = execution.getProgramDataFile();
-        saveProgram(f);
+        CompletableFuture<Void> written = writeProgram(f);
+        if (!ASYNC_PROGRAM_WRITES) {
+            await(written, f);
+        }
+        return written;
     }
 
+    /**
+     * Persists the current state of {@link CpsThreadGroup} to the given file, waiting until it has been written.
+     */
     @CpsVmThreadOnly
     public void saveProgram(File f) throws IOException {
+        await(writeProgram(f), f);
+    }
+
+    @CpsVmThreadOnly
+    private CompletableFuture<Void> writeProgram(File f) throws IOException {
         File dir = f.getParentFile();
         File tmpFile = File.createTempFile("atomic", null, dir);
 
@@ -629,30 +1057,139 @@ public final class CpsThreadGroup implements Serializable {
                     Level.WARNING,
                     "Skipping save to {0} since Jenkins seems to be either starting up or shutting down",
                     f);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        boolean serializedOK = false;
         try (CpsFlowExecution.Timing t = execution.time(CpsFlowExecution.TimingKind.saveProgram);
                 WithThreadName diag = new WithThreadName("saving " + f)) {
             try (RiverWriter w = new RiverWriter(tmpFile, execution.getOwner(), pickleFactories)) {
                 w.writeObject(this);
             }
-            serializedOK = true;
-            Files.move(
-                    tmpFile.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-            LOGGER.fine(() -> f + " saved");
+            CompletableFuture<Void> written = submit(new ProgramSnapshot(f, tmpFile));
+            tmpFile = null; // now owned by programWriter
+            return written;
         } catch (RuntimeException e) {
             propagateErrorToWorkflow(e);
             throw new IOException("Failed to persist " + f, e);
         } catch (IOException e) {
-            if (!serializedOK) {
-                propagateErrorToWorkflow(e);
-            } // JENKINS-29656: otherwise just send the I/O error to caller and move on
+            propagateErrorToWorkflow(e);
             throw new IOException("Failed to persist " + f, e);
         } finally {
             CpsFlowExecution.PROGRAM_STATE_SERIALIZATION.set(old);
-            Util.deleteFile(tmpFile);
+            if (tmpFile != null) {
+                Util.deleteFile(tmpFile);
+            }
+        }
+    }
+
+    /**
+     * Deletes the program data file once any snapshots still being written to it have been dealt with.
+     */
+    @CpsVmThreadOnly
+    private void deleteProgram(File f) throws IOException {
+        await(submit(new ProgramSnapshot(f, null)), f);
+    }
+
+    private CompletableFuture<Void> submit(ProgramSnapshot snapshot) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        latestProgramSnapshot = snapshot;
+        programWritten = written;
+        try {
+            programWriter.execute(() -> {
+                try {
+                    snapshot.write();
+                    written.complete(null);
+                } catch (IOException | RuntimeException x) {
+                    written.completeExceptionally(new IOException("Failed to persist " + snapshot.target, x));
+                }
+            });
+        } catch (RejectedExecutionException x) {
+            snapshot.discard();
+            written.completeExceptionally(x);
+        }
+        return written;
+    }
+
+    private static void await(Future<Void> written, File f) throws IOException {
+        try {
+            written.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while persisting " + f, x);
+        } catch (ExecutionException x) {
+            Throwable cause = x.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Failed to persist " + f, cause);
+        }
+    }
+
+    /**
+     * Completes once every snapshot taken so far by {@link #saveProgram()} has been written, successfully or not.
+     * Failures are reported by whoever took the snapshot.
+     */
+    CompletableFuture<Void> pendingProgramWrites() {
+        return programWritten.exceptionally(x -> null);
+    }
+
+    /**
+     * A serialized program waiting in {@link #programWriter} to be moved into place.
+     */
+    private final class ProgramSnapshot {
+        final File target;
+        /** the serialized program, or null to delete {@link #target} */
+        final @CheckForNull File tmpFile;
+        /** {@link #tmpFile} as {@linkplain ProgramDataCompression compressed}, if it was */
+        private @CheckForNull File compressed;
+
+        ProgramSnapshot(File target, @CheckForNull File tmpFile) {
+            this.target = target;
+            this.tmpFile = tmpFile;
+        }
+
+        void write() throws IOException {
+            try {
+                ProgramSnapshot latest = latestProgramSnapshot;
+                if (latest != this && latest != null && latest.target.equals(target)) {
+                    LOGGER.fine(() -> "skipping stale snapshot of " + target);
+                    return;
+                }
+                if (tmpFile == null) {
+                    Util.deleteFile(target);
+                    return;
+                }
+                File file = tmpFile;
+                if (ProgramDataCompression.isEnabled()) {
+                    compressed = File.createTempFile("atomic", null, target.getParentFile());
+                    try (CpsFlowExecution.Timing t = execution.time(CpsFlowExecution.TimingKind.saveProgram)) {
+                        ProgramDataCompression.compress(tmpFile, compressed);
+                    }
+                    file = compressed;
+                }
+                if (FSYNC_PROGRAM) {
+                    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                }
+                Files.move(
+                        file.toPath(),
+                        target.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                LOGGER.fine(() -> target + " saved");
+            } finally {
+                discard();
+            }
+        }
+
+        void discard() {
+            for (File f : new File[] {tmpFile, compressed}) {
+                if (f != null) {
+                    try {
+                        Util.deleteFile(f);
+                    } catch (IOException x) {
+                        LOGGER.log(Level.FINE, "could not delete " + f, x);
+                    }
+                }
+            }
         }
     }
 
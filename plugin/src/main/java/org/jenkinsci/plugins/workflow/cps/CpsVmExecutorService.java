@@ -13,11 +13,17 @@ import hudson.util.DaemonThreadFactory;
 import hudson.util.ExceptionCatchingThreadFactory;
 import hudson.util.NamingThreadFactory;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
@@ -25,6 +31,7 @@ import jenkins.security.ImpersonatingExecutorService;
 import jenkins.util.ContextResettingExecutorService;
 import jenkins.util.ErrorLoggingExecutorService;
 import jenkins.util.InterceptingExecutorService;
+import jenkins.util.SystemProperties;
 import org.codehaus.groovy.runtime.GroovyCategorySupport;
 import org.jenkinsci.plugins.workflow.cps.persistence.IteratorHack;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
@@ -38,6 +45,8 @@ import org.jenkinsci.plugins.workflow.steps.StepExecution;
  */
 class CpsVmExecutorService extends InterceptingExecutorService {
 
+    private static final Logger LOGGER = Logger.getLogger(CpsVmExecutorService.class.getName());
+
     @SuppressWarnings("rawtypes")
     private static final List<Class> CATEGORIES = ImmutableList.<Class>builder()
             .addAll(Continuable.categories)
@@ -57,18 +66,199 @@ class CpsVmExecutorService extends InterceptingExecutorService {
         });
     }
 
+    /**
+     * Whether to run the CPS VM on virtual threads rather than platform threads.
+     * Requires Java 21 or newer; ignored with a warning otherwise.
+     * Virtual threads are still pooled, so that {@link GroovyCategorySupport#use} is set up once per thread
+     * rather than for every chunk of work, but an idle pooled thread no longer holds on to a native thread and its stack.
+     * <p>Experimental: on Java 21 a virtual thread is pinned to its carrier while inside a {@code synchronized} block,
+     * which the CPS VM enters often (for example in {@link CpsThreadGroup} and flow node storage),
+     * and while doing file I/O such as saving the program,
+     * so a build blocked there still ties up a carrier, and thus a native thread, as it would without this.
+     * {@code CpsVmExecutorServiceStressTest} reports how often that happens via {@code jdk.VirtualThreadPinned} events.
+     */
+    static final boolean VIRTUAL_THREADS =
+            SystemProperties.getBoolean(CpsVmExecutorService.class.getName() + ".VIRTUAL_THREADS");
+
+    private static ThreadFactory coreThreadFactory() {
+        if (VIRTUAL_THREADS) {
+            try {
+                // TODO Java 21+ use Thread.ofVirtual().factory() directly
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                ThreadFactory factory = (ThreadFactory)
+                        Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+                LOGGER.info("running CPS VM on virtual threads");
+                return factory;
+            } catch (ReflectiveOperationException x) {
+                LOGGER.log(Level.WARNING, "virtual threads are not available in this JVM, using platform threads", x);
+            }
+        }
+        return new DaemonThreadFactory();
+    }
+
+    /**
+     * Maximum number of builds whose CPS VM may be running at the same time across the controller.
+     * Zero (the default) puts no bound on it.
+     * When bounded, builds wait in a single first-come, first-served queue, which is fair
+     * since each build has at most one turn queued at a time and a build which can run further
+     * goes back to the end of the queue after each turn, which {@link CpsThreadGroup#TURN_TIME_SLICE_MS} may cut short.
+     * Time spent in this queue is reported as {@link CpsFlowExecution.TimingKind#runQueue}.
+     * A build with {@linkplain #submitUrgent urgent tasks}, such as being aborted, skips the queue,
+     * briefly running more CPS VMs than the bound, so that it cannot be held up by builds hogging their turns.
+     */
+    static final int MAX_CONCURRENT_VMS =
+            SystemProperties.getInteger(CpsVmExecutorService.class.getName() + ".MAX_CONCURRENT_VMS", 0);
+
     private static final ExecutorService threadPool =
             new ContextResettingExecutorService(new ImpersonatingExecutorService(
                     new ErrorLoggingExecutorService(
                             Executors.newCachedThreadPool(categoryThreadFactory(new ExceptionCatchingThreadFactory(
-                                    new NamingThreadFactory(new DaemonThreadFactory(), "CpsVmExecutorService"))))),
+                                    new NamingThreadFactory(coreThreadFactory(), "CpsVmExecutorService"))))),
                     ACL.SYSTEM2));
 
+    static {
+        if (MAX_CONCURRENT_VMS > 0) {
+            LOGGER.info(() -> "running at most " + MAX_CONCURRENT_VMS + " CPS VMs at a time");
+        }
+    }
+
+    /**
+     * Builds waiting for one of {@link #MAX_CONCURRENT_VMS} turns, oldest first.
+     * Also guards {@link #runningTurns} and {@link Turns#waiting}.
+     */
+    private static final Deque<Turns> queuedTurns = new ArrayDeque<>();
+
+    private static int runningTurns;
+
+    /**
+     * Runs the turns of one build on {@link #threadPool}, at most {@link #MAX_CONCURRENT_VMS} at a time across builds.
+     */
+    private static final class Turns extends AbstractExecutorService {
+        /**
+         * Control tasks, such as interrupts, to be run ahead of anything else queued in the lane.
+         * @see #submitUrgent
+         */
+        final Queue<Runnable> urgentTasks = new ConcurrentLinkedQueue<>();
+
+        private @CheckForNull Runnable waiting;
+
+        @Override
+        public void execute(Runnable turn) {
+            if (MAX_CONCURRENT_VMS > 0) {
+                synchronized (queuedTurns) {
+                    if (urgentTasks.isEmpty()) {
+                        if (runningTurns >= MAX_CONCURRENT_VMS) {
+                            waiting = turn;
+                            queuedTurns.add(this);
+                            return;
+                        }
+                        runningTurns++;
+                        turn = counted(turn);
+                    }
+                }
+            }
+            threadPool.execute(turn);
+        }
+
+        /**
+         * Starts the turn waiting in {@link #queuedTurns}, if any, right away.
+         */
+        void expedite() {
+            Runnable turn;
+            synchronized (queuedTurns) {
+                turn = waiting;
+                if (turn == null) {
+                    return;
+                }
+                waiting = null;
+                queuedTurns.remove(this);
+            }
+            threadPool.execute(turn);
+        }
+
+        private static Runnable counted(Runnable turn) {
+            return () -> {
+                try {
+                    turn.run();
+                } finally {
+                    Runnable next;
+                    synchronized (queuedTurns) {
+                        Turns turns = queuedTurns.poll();
+                        if (turns == null) {
+                            runningTurns--;
+                            return;
+                        }
+                        next = turns.waiting;
+                        turns.waiting = null;
+                    }
+                    threadPool.execute(counted(next));
+                }
+            };
+        }
+
+        // The shared thread pool outlives every build; SingleLaneExecutorService tracks its own shutdown.
+
+        @Override
+        public void shutdown() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+
     private CpsThreadGroup cpsThreadGroup;
 
+    private final Turns turns;
+
     CpsVmExecutorService(CpsThreadGroup cpsThreadGroup) {
-        super(new SingleLaneExecutorService(threadPool));
+        this(cpsThreadGroup, new Turns());
+    }
+
+    private CpsVmExecutorService(CpsThreadGroup cpsThreadGroup, Turns turns) {
+        super(new SingleLaneExecutorService(turns));
         this.cpsThreadGroup = cpsThreadGroup;
+        this.turns = turns;
+    }
+
+    /**
+     * Runs a task on the CPS VM thread as soon as the task currently running there (if any) is done,
+     * ahead of {@link CpsThreadGroup#scheduleRun}, listener notifications, and other tasks already queued,
+     * and without waiting for other builds to finish their turns under {@link #MAX_CONCURRENT_VMS}.
+     */
+    void submitUrgent(Runnable task) {
+        turns.urgentTasks.add(task);
+        // Whichever task runs next will pick it up; this one makes sure there is one.
+        execute(() -> {});
+        turns.expedite();
+    }
+
+    private void runUrgentTasks() {
+        Runnable task;
+        while ((task = turns.urgentTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                reportProblem(t);
+            }
+        }
     }
 
     @Override
@@ -78,6 +268,7 @@ class CpsVmExecutorService extends InterceptingExecutorService {
             timing.close();
             ThreadContext context = setUp();
             try {
+                runUrgentTasks();
                 r.run();
             } catch (final Throwable t) {
                 reportProblem(t);
@@ -140,6 +331,7 @@ class CpsVmExecutorService extends InterceptingExecutorService {
             timing.close();
             ThreadContext context = setUp();
             try {
+                runUrgentTasks();
                 return r.call();
             } catch (final Throwable t) {
                 reportProblem(t);
@@ -268,6 +460,4 @@ class CpsVmExecutorService extends InterceptingExecutorService {
     static ThreadLocal<CpsThreadGroup> CURRENT = new ThreadLocal<>();
     /** {@link Thread#getContextClassLoader} to be used for plugin code, as opposed to Groovy. */
     static ThreadLocal<ClassLoader> ORIGINAL_CONTEXT_CLASS_LOADER = new ThreadLocal<>();
-
-    private static final Logger LOGGER = Logger.getLogger(CpsVmExecutorService.class.getName());
 }
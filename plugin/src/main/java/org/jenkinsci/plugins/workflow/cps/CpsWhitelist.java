@@ -7,7 +7,9 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Optional;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
@@ -106,37 +108,55 @@ class CpsWhitelist extends AbstractWhitelist {
 
         if (Continuable.categories.contains(c)) {
             // Delegate permission checks to the original *GroovyMethods.
-            String cn = c.getName();
-            String driverFrom = "com.cloudbees.groovy.cps.Cps"; // cf. Driver
-            String driverTo = "org.codehaus.groovy.runtime.";
-            if (cn.startsWith(driverFrom)) {
-                try {
-                    Class<?> orig = Class.forName(driverTo + cn.substring(driverFrom.length()));
-                    Class<?>[] expectedParameterTypes = method.getParameterTypes();
-                    String expectedName;
-                    if (n.startsWith("$")) {
-                        // E.g., CpsDefaultGroovyMethods.$each__java_util_List__groovy_lang_Closure
-                        expectedName = n.substring(1).replaceFirst("__.+$", "");
-                    } else {
-                        expectedName = n;
-                    }
-                    for (Method m2 : orig.getMethods()) {
-                        if (m2.getName().equals(expectedName)
-                                && Arrays.equals(m2.getParameterTypes(), expectedParameterTypes)) {
-                            return Whitelist.all().permitsStaticMethod(m2, args);
-                        }
-                    }
-                } catch (ClassNotFoundException x) {
-                    LOGGER.log(Level.WARNING, null, x); // this would be unexpected
-                }
-            } else {
-                LOGGER.log(Level.WARNING, "Unexpected category name {0}", cn); // as would this
+            Optional<Method> orig = CATEGORY_ORIGINALS.computeIfAbsent(method, CpsWhitelist::findCategoryOriginal);
+            if (orig.isPresent()) {
+                return Whitelist.all().permitsStaticMethod(orig.get(), args);
             }
         }
 
         return false;
     }
 
+    /**
+     * Original {@code *GroovyMethods} for each CPS-translated category method.
+     * Resolving them means scanning all methods of classes like {@code DefaultGroovyMethods},
+     * which is far too costly to repeat for every sandboxed call.
+     * Only the resolution is memoized; the permission check itself is still made each time
+     * since it can depend on the arguments and on script approvals.
+     */
+    private static final Map<Method, Optional<Method>> CATEGORY_ORIGINALS = new ConcurrentHashMap<>();
+
+    private static Optional<Method> findCategoryOriginal(Method method) {
+        String cn = method.getDeclaringClass().getName();
+        String n = method.getName();
+        String driverFrom = "com.cloudbees.groovy.cps.Cps"; // cf. Driver
+        String driverTo = "org.codehaus.groovy.runtime.";
+        if (cn.startsWith(driverFrom)) {
+            try {
+                Class<?> orig = Class.forName(driverTo + cn.substring(driverFrom.length()));
+                Class<?>[] expectedParameterTypes = method.getParameterTypes();
+                String expectedName;
+                if (n.startsWith("$")) {
+                    // E.g., CpsDefaultGroovyMethods.$each__java_util_List__groovy_lang_Closure
+                    expectedName = n.substring(1).replaceFirst("__.+$", "");
+                } else {
+                    expectedName = n;
+                }
+                for (Method m2 : orig.getMethods()) {
+                    if (m2.getName().equals(expectedName)
+                            && Arrays.equals(m2.getParameterTypes(), expectedParameterTypes)) {
+                        return Optional.of(m2);
+                    }
+                }
+            } catch (ClassNotFoundException x) {
+                LOGGER.log(Level.WARNING, null, x); // this would be unexpected
+            }
+        } else {
+            LOGGER.log(Level.WARNING, "Unexpected category name {0}", cn); // as would this
+        }
+        return Optional.empty();
+    }
+
     /**
      * Stuff we whitelist specifically for CPS, with the rest of the installed rules combined.
      */
@@ -5,8 +5,10 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.Whitelist;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.EnumeratingWhitelist;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.ProxyWhitelist;
@@ -29,7 +31,12 @@ class GroovyClassLoaderWhitelist extends Whitelist {
     private final Whitelist delegate;
 
     GroovyClassLoaderWhitelist(Whitelist delegate, GroovyClassLoader... scriptLoaders) {
-        this.scriptLoaders = Arrays.<ClassLoader>asList(scriptLoaders);
+        List<ClassLoader> loaders = new ArrayList<>(Arrays.asList(scriptLoaders));
+        for (GroovyClassLoader loader : scriptLoaders) {
+            // classes from trusted libraries shared between builds
+            loaders.addAll(CpsGroovyShell.sharedLoaders(loader));
+        }
+        this.scriptLoaders = loaders;
         this.delegate = delegate;
     }
 
@@ -37,6 +37,59 @@ public abstract class GroovyShellDecorator implements ExtensionPoint {
      */
     public void configureShell(@CheckForNull CpsFlowExecution context, GroovyShell shell) {}
 
+    /**
+     * Identifies the effect of this decorator on compiled code, so that bytecode can be reused between builds.
+     * Two shells configured by decorators returning equal fingerprints must compile identical sources identically.
+     * Returning null disables {@code ScriptClassCache}, {@code CompiledScripts} and {@link TrustedClassCache}
+     * for shells this decorator configures.
+     *
+     * <p>
+     * A reused script is not compiled, so compilation customizers added by this decorator do not run for it.
+     * A decorator overriding {@link #customizeImports} or {@link #configureCompiler} therefore gets null by default,
+     * since only it can tell whether its customizers have side effects, such as attaching actions to the build.
+     * Such a decorator may opt in by returning, for example, its class name and version,
+     * plus anything about the build which its imports or compiler configuration depend on.
+     * Any other decorator does not affect compilation, and gets its class name by default.
+     * Compilations which extend the class path of the shell (for example with library sources)
+     * are never shared between builds regardless.
+     *
+     * <p>
+     * See {@code classloader.md} for details.
+     *
+     * @param context
+     *      null if {@link GroovyShell} is created just to test the parsing of the script.
+     */
+    public @CheckForNull String getCompilationFingerprint(@CheckForNull CpsFlowExecution context) {
+        return affectsCompilation() ? null : getClass().getName();
+    }
+
+    /**
+     * Whether this decorator overrides {@link #customizeImports} or {@link #configureCompiler}.
+     */
+    final boolean affectsCompilation() {
+        return AFFECTS_COMPILATION.get(getClass());
+    }
+
+    /**
+     * @see #affectsCompilation
+     */
+    private static final ClassValue<Boolean> AFFECTS_COMPILATION = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return overrides(type, "customizeImports", ImportCustomizer.class)
+                    || overrides(type, "configureCompiler", CompilerConfiguration.class);
+        }
+
+        private boolean overrides(Class<?> type, String method, Class<?> parameterType) {
+            try {
+                return type.getMethod(method, CpsFlowExecution.class, parameterType).getDeclaringClass()
+                        != GroovyShellDecorator.class;
+            } catch (NoSuchMethodException x) {
+                throw new AssertionError(x);
+            }
+        }
+    };
+
     /**
      * Obtains a contextualized {@link GroovyShellDecorator} used to decorate the trusted shell.
      *
@@ -57,5 +110,10 @@ public abstract class GroovyShellDecorator implements ExtensionPoint {
     /**
      * {@link GroovyShellDecorator} that doesn't do anything.
      */
-    public static final GroovyShellDecorator NULL = new GroovyShellDecorator() {};
+    public static final GroovyShellDecorator NULL = new GroovyShellDecorator() {
+        @Override
+        public String getCompilationFingerprint(@CheckForNull CpsFlowExecution context) {
+            return "";
+        }
+    };
 }
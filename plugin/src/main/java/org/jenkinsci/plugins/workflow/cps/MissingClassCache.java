@@ -0,0 +1,111 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+
+/**
+ * Remembers names of classes and resources which could not be found in the plugin class path.
+ *
+ * <p>While resolving an unqualified identifier, the Groovy compiler probes for a class of that name
+ * in every star import ({@code hudson.model.*}, {@code jenkins.model.*}, and so on),
+ * and for a {@code .groovy} source of that name, most of which do not exist.
+ * Each miss is a full traversal of the uber class loader, repeated for every build.
+ * The answers depend only on the installed plugins, so they are shared across executions,
+ * and discarded whenever the set of plugins changes.
+ * @see CpsGroovyShellFactory#makeClassLoader
+ */
+final class MissingClassCache {
+
+    private static final Logger LOGGER = Logger.getLogger(MissingClassCache.class.getName());
+
+    /**
+     * Maximum number of names to remember before starting over; zero disables the cache.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static int MAX_ENTRIES = SystemProperties.getInteger(MissingClassCache.class.getName() + ".MAX_ENTRIES", 20_000);
+
+    private static MissingClassCache current;
+
+    /** {@link ScriptClassCache#pluginsFingerprint} for which {@link #missingClasses} and {@link #missingResources} are valid. */
+    private final String pluginsFingerprint;
+
+    private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+    private final Set<String> missingResources = ConcurrentHashMap.newKeySet();
+
+    private MissingClassCache(String pluginsFingerprint) {
+        this.pluginsFingerprint = pluginsFingerprint;
+    }
+
+    /**
+     * Wraps a plugin class loader so that lookups known to fail are answered immediately.
+     */
+    static ClassLoader wrap(ClassLoader parent) {
+        if (MAX_ENTRIES <= 0) {
+            return parent;
+        }
+        return new Loader(parent, forCurrentPlugins());
+    }
+
+    private static synchronized MissingClassCache forCurrentPlugins() {
+        String fingerprint = ScriptClassCache.pluginsFingerprint();
+        if (current == null || !current.pluginsFingerprint.equals(fingerprint)) {
+            if (current != null) {
+                LOGGER.fine("plugins changed, discarding missing class cache");
+            }
+            current = new MissingClassCache(fingerprint);
+        }
+        return current;
+    }
+
+    static synchronized void clear() {
+        current = null;
+    }
+
+    private void record(Set<String> names, String name) {
+        if (missingClasses.size() + missingResources.size() >= MAX_ENTRIES) {
+            LOGGER.log(Level.FINE, "missing class cache reached {0} entries, starting over", MAX_ENTRIES);
+            missingClasses.clear();
+            missingResources.clear();
+        }
+        names.add(name);
+    }
+
+    static final class Loader extends ClassLoader {
+        private final MissingClassCache cache;
+
+        Loader(ClassLoader parent, MissingClassCache cache) {
+            super(parent);
+            this.cache = cache;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (cache.missingClasses.contains(name)) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                return super.loadClass(name, resolve);
+            } catch (ClassNotFoundException x) {
+                cache.record(cache.missingClasses, name);
+                throw x;
+            }
+        }
+
+        @Override
+        public URL getResource(String name) {
+            if (cache.missingResources.contains(name)) {
+                return null;
+            }
+            URL url = super.getResource(name);
+            if (url == null) {
+                cache.record(cache.missingResources, name);
+            }
+            return url;
+        }
+    }
+}
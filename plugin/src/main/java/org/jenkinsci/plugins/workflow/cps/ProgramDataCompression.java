@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.support.pickles.serialization.RiverReader;
+import org.jenkinsci.plugins.workflow.support.pickles.serialization.RiverWriter;
+
+/**
+ * Optional compressed form of {@link CpsFlowExecution#getProgramDataFile}.
+ *
+ * <p>{@link RiverWriter} and {@link RiverReader} work only with uncompressed files, which they seek around in,
+ * so a compressed file is a {@link #HEADER} followed by the deflated contents of what {@link RiverWriter} produced.
+ * Files without the header are read as they always were, so compression may be turned on or off at any time,
+ * though a file saved compressed cannot be read by older versions of this plugin.
+ */
+final class ProgramDataCompression {
+
+    private static final Logger LOGGER = Logger.getLogger(ProgramDataCompression.class.getName());
+
+    /**
+     * {@link Deflater} level at which to save program data, from 1 (fastest) to 9 (smallest);
+     * zero saves it uncompressed, as older versions of this plugin did.
+     * Compression happens on the background thread writing the file, not on the CPS VM thread.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static int COMPRESSION_LEVEL =
+            SystemProperties.getInteger(ProgramDataCompression.class.getName() + ".COMPRESSION_LEVEL", 0);
+
+    /** Format marker and version; cannot be mistaken for the start of a {@link RiverWriter} file. */
+    private static final byte[] HEADER = {'C', 'P', 'S', 'Z', 1};
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Prefix of files written by {@link #inflate}. */
+    private static final String INFLATED_PREFIX = "inflated";
+
+    private ProgramDataCompression() {}
+
+    static boolean isEnabled() {
+        return COMPRESSION_LEVEL > 0;
+    }
+
+    /**
+     * Writes a compressed copy of {@code from} to {@code to}.
+     */
+    static void compress(File from, File to) throws IOException {
+        Deflater deflater = new Deflater(Math.min(COMPRESSION_LEVEL, Deflater.BEST_COMPRESSION));
+        try (InputStream in = Files.newInputStream(from.toPath());
+                OutputStream out = new BufferedOutputStream(Files.newOutputStream(to.toPath()), BUFFER_SIZE)) {
+            out.write(HEADER);
+            try (DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, BUFFER_SIZE)) {
+                in.transferTo(deflated);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * If {@code f} was saved compressed, inflates it to a temporary file alongside for {@link RiverReader} to use.
+     * Any such files left behind by an earlier load which never got to delete them, say because Jenkins was killed,
+     * are deleted first.
+     * @return the inflated file, which the caller must delete; or null if {@code f} may be read directly
+     */
+    static @CheckForNull File inflate(File f) throws IOException {
+        if (!isCompressed(f)) {
+            return null;
+        }
+        File dir = f.getParentFile();
+        File[] stale = dir.listFiles((d, name) -> name.startsWith(INFLATED_PREFIX) && name.endsWith(".tmp"));
+        if (stale != null) {
+            for (File s : stale) {
+                LOGGER.fine(() -> "deleting stale " + s);
+                Util.deleteFile(s);
+            }
+        }
+        File inflated = File.createTempFile(INFLATED_PREFIX, null, dir);
+        boolean ok = false;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(f.toPath()), BUFFER_SIZE)) {
+            in.skipNBytes(HEADER.length);
+            try (InputStream content = new InflaterInputStream(in);
+                    OutputStream out = Files.newOutputStream(inflated.toPath())) {
+                content.transferTo(out);
+            }
+            ok = true;
+            return inflated;
+        } finally {
+            if (!ok) {
+                Util.deleteFile(inflated);
+            }
+        }
+    }
+
+    static boolean isCompressed(File f) throws IOException {
+        try (InputStream in = Files.newInputStream(f.toPath())) {
+            return Arrays.equals(in.readNBytes(HEADER.length), HEADER);
+        }
+    }
+}
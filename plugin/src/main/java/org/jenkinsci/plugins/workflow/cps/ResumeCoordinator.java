@@ -0,0 +1,259 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import com.cloudbees.jenkins.support.api.Component;
+import com.cloudbees.jenkins.support.api.Container;
+import com.cloudbees.jenkins.support.api.Content;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.SettableFuture;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.security.Permission;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.graph.StepNode;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.support.concurrent.Futures;
+
+/**
+ * Schedules {@link CpsFlowExecution#loadProgram} for builds being resumed, typically after a restart.
+ *
+ * <p>Parsing scripts and requesting {@link org.jenkinsci.plugins.workflow.pickles.Pickle}s is CPU and memory intensive,
+ * so only {@link #MAX_CONCURRENT_LOADS} builds do so at once.
+ * Builds which look like they will only go on to wait for an agent or user input are resumed after all others.
+ */
+public final class ResumeCoordinator {
+
+    private static final Logger LOGGER = Logger.getLogger(ResumeCoordinator.class.getName());
+
+    /**
+     * Maximum number of builds to load at once; zero loads each build as soon as it is found, as before.
+     * Changes take effect for the next build to be resumed.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static int MAX_CONCURRENT_LOADS = SystemProperties.getInteger(
+            ResumeCoordinator.class.getName() + ".MAX_CONCURRENT_LOADS",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Function names of steps which a build may be assumed to be waiting on at length
+     * when all its {@linkplain CpsFlowExecution#getCurrentHeads heads} are such steps.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static Set<String> WAITING_STEPS = Set.of(SystemProperties.getString(
+                    ResumeCoordinator.class.getName() + ".WAITING_STEPS", "input,node")
+            .split(","));
+
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final AtomicInteger pending = new AtomicInteger();
+    private static final AtomicInteger loading = new AtomicInteger();
+    private static final AtomicInteger resumed = new AtomicInteger();
+    private static final AtomicInteger failed = new AtomicInteger();
+    /** Whether the builds found on startup have all been resumed, and a summary logged. */
+    private static final AtomicBoolean summarized = new AtomicBoolean();
+
+    private static ThreadPoolExecutor pool;
+
+    private ResumeCoordinator() {}
+
+    /**
+     * Sets {@link CpsFlowExecution#programPromise} and arranges for it to be completed.
+     */
+    static void resume(CpsFlowExecution execution, File programDataFile) {
+        SettableFuture<CpsThreadGroup> result = SettableFuture.create();
+        execution.programPromise = result;
+        Futures.addCallback(result, new FutureCallback<>() {
+            @Override
+            public void onSuccess(CpsThreadGroup g) {
+                resumed.incrementAndGet();
+                done();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failed.incrementAndGet();
+                done();
+            }
+        });
+        pending.incrementAndGet();
+        int loads = MAX_CONCURRENT_LOADS;
+        if (loads <= 0) {
+            execution.loadProgram(programDataFile, result);
+            return;
+        }
+        executor(loads).execute(new Load(execution, programDataFile, result, isWaiting(execution)));
+    }
+
+    private static synchronized ThreadPoolExecutor executor(int loads) {
+        if (pool == null) {
+            pool = new ThreadPoolExecutor(
+                    loads,
+                    loads,
+                    60L,
+                    TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "ResumeCoordinator"));
+            pool.allowCoreThreadTimeOut(true);
+        } else if (pool.getCorePoolSize() != loads) {
+            // MAX_CONCURRENT_LOADS was changed, as from the script console; the core size may never exceed the maximum
+            if (loads > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(loads);
+                pool.setCorePoolSize(loads);
+            } else {
+                pool.setCorePoolSize(loads);
+                pool.setMaximumPoolSize(loads);
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Whether a build appears to be waiting only for {@link #WAITING_STEPS}, so that others should be resumed first.
+     */
+    static boolean isWaiting(CpsFlowExecution execution) {
+        List<FlowNode> heads = execution.getCurrentHeads();
+        if (heads.isEmpty()) {
+            return false;
+        }
+        for (FlowNode head : heads) {
+            StepDescriptor d = head instanceof StepNode ? ((StepNode) head).getDescriptor() : null;
+            if (d == null || !WAITING_STEPS.contains(d.getFunctionName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void done() {
+        if (pending.decrementAndGet() == 0) {
+            // later builds are resumed lazily, one at a time, as they are loaded
+            Level level = summarized.compareAndSet(false, true) ? Level.INFO : Level.FINE;
+            LOGGER.log(
+                    level,
+                    () -> "Resumed " + resumed.get() + " Pipeline builds; " + failed.get() + " failed to resume");
+        }
+    }
+
+    /**
+     * Starts counting afresh, as when {@link Jenkins} is restarted within the same JVM.
+     * Builds may already be being resumed by now, in which case those counts are kept.
+     */
+    @Initializer(after = InitMilestone.STARTED)
+    public static void resetCounts() {
+        if (pending.get() == 0) {
+            resumed.set(0);
+            failed.set(0);
+        }
+        summarized.set(false);
+    }
+
+    /** Number of builds which have been found but not yet resumed or failed to resume. */
+    public static int getPending() {
+        return pending.get();
+    }
+
+    /** Number of builds currently taking up one of the {@link #MAX_CONCURRENT_LOADS}. */
+    public static int getLoading() {
+        return loading.get();
+    }
+
+    /** Number of builds which have been resumed since startup. */
+    public static int getResumed() {
+        return resumed.get();
+    }
+
+    /** Number of builds which have failed to resume since startup. */
+    public static int getFailed() {
+        return failed.get();
+    }
+
+    private static final class Load implements Runnable, Comparable<Load> {
+        private final CpsFlowExecution execution;
+        private final File programDataFile;
+        private final SettableFuture<CpsThreadGroup> result;
+        private final boolean waiting;
+        private final long order = sequence.incrementAndGet();
+
+        Load(CpsFlowExecution execution, File programDataFile, SettableFuture<CpsThreadGroup> result, boolean waiting) {
+            this.execution = execution;
+            this.programDataFile = programDataFile;
+            this.result = result;
+            this.waiting = waiting;
+        }
+
+        @Override
+        public void run() {
+            loading.incrementAndGet();
+            LOGGER.fine(() -> "loading " + execution);
+            try (ACLContext context = ACL.as2(ACL.SYSTEM2)) {
+                execution.loadProgram(programDataFile, result);
+            } catch (RuntimeException x) {
+                LOGGER.log(Level.WARNING, "failed to resume " + execution, x);
+                result.setException(x);
+            } finally {
+                loading.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(Load o) {
+            return waiting != o.waiting ? Boolean.compare(waiting, o.waiting) : Long.compare(order, o.order);
+        }
+    }
+
+    @Extension(optional = true)
+    public static class PipelineResume extends Component {
+
+        @Override
+        public Set<Permission> getRequiredPermissions() {
+            return Set.of(Jenkins.ADMINISTER);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Pipeline builds resumed at startup";
+        }
+
+        @Override
+        public ComponentCategory getCategory() {
+            return ComponentCategory.BUILDS;
+        }
+
+        @Override
+        public void addContents(Container container) {
+            container.add(new Content("nodes/master/pipeline-resume.txt") {
+                @Override
+                public void writeTo(OutputStream outputStream) throws IOException {
+                    PrintWriter pw = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                    pw.println("Resumed: " + getResumed());
+                    pw.println("Pending: " + getPending());
+                    pw.println("Loading: " + getLoading());
+                    pw.println("Failed: " + getFailed());
+                    pw.flush();
+                }
+            });
+        }
+    }
+}
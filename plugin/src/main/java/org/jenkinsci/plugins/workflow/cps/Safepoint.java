@@ -18,10 +18,18 @@ public class Safepoint extends ThreadTask {
     /**
      * Method called from CPS interpreter.
      *
-     * Suspend the execution to yield CPS VM thread to other activities.
+     * Suspend the execution to yield CPS VM thread to other activities,
+     * once the current chunk has used up its budget.
+     *
+     * @see CpsThreadGroup#SAFEPOINT_TIME_BUDGET_MS
+     * @see CpsThreadGroup#SAFEPOINT_STEP_BUDGET
      */
     @Whitelisted
     public static void safepoint() {
+        CpsThreadGroup g = CpsThreadGroup.current();
+        if (g != null && !g.isSafepointBudgetExhausted()) {
+            return;
+        }
         Continuable.suspend("safepoint", new Safepoint());
     }
 
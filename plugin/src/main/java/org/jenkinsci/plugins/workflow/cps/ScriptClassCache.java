@@ -0,0 +1,289 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.PluginWrapper;
+import hudson.Util;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.codehaus.groovy.ast.ClassNode;
+
+/**
+ * Bounded cache of CPS-transformed bytecode produced by {@link CpsGroovyShell}.
+ *
+ * <p>The same {@code Jenkinsfile} is typically compiled over and over: once per build start and again on every resume.
+ * Compilation output depends only on the source text, the name of the script class, whether the sandbox is used,
+ * and the compiler configuration and class path set up by {@link CpsGroovyShellFactory} and {@link GroovyShellDecorator}s.
+ * When those agree, the classes can be defined from the bytes of an earlier compilation
+ * into the fresh per-build class loader rather than running the compiler again.
+ *
+ * <p>Only bytecode is retained, never {@link Class} instances, so cached entries do not pin any build’s class loader.
+ * @see CpsFlowExecution.TimingKind#parseCacheHit
+ */
+final class ScriptClassCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ScriptClassCache.class.getName());
+
+    /**
+     * Maximum number of compilations to retain; zero disables the cache.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static int MAX_ENTRIES = SystemProperties.getInteger(ScriptClassCache.class.getName() + ".MAX_ENTRIES", 500);
+
+    /**
+     * Maximum total size of retained bytecode.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static long MAX_BYTES = SystemProperties.getLong(ScriptClassCache.class.getName() + ".MAX_BYTES", 64L * 1024 * 1024);
+
+    /** Least recently used first. */
+    private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static long totalBytes;
+
+    private ScriptClassCache() {}
+
+    static boolean isEnabled() {
+        return MAX_ENTRIES > 0 && MAX_BYTES > 0;
+    }
+
+    static synchronized @CheckForNull Entry get(@NonNull Key key) {
+        return ENTRIES.get(key);
+    }
+
+    static synchronized void put(@NonNull Key key, @NonNull Entry entry) {
+        if (entry.size > MAX_BYTES) {
+            return;
+        }
+        Entry old = ENTRIES.put(key, entry);
+        if (old != null) {
+            totalBytes -= old.size;
+        }
+        totalBytes += entry.size;
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while ((ENTRIES.size() > MAX_ENTRIES || totalBytes > MAX_BYTES) && it.hasNext()) {
+            totalBytes -= it.next().size;
+            it.remove();
+        }
+    }
+
+    static synchronized void clear() {
+        ENTRIES.clear();
+        totalBytes = 0;
+    }
+
+    static synchronized int size() {
+        return ENTRIES.size();
+    }
+
+    /**
+     * Identifies the set of installed plugins, whose classes may be resolved while compiling.
+     */
+    static String pluginsFingerprint() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j == null) {
+            return "";
+        }
+        StringBuilder b = new StringBuilder();
+        for (PluginWrapper p : j.getPluginManager().getPlugins()) {
+            if (p.isActive()) {
+                b.append(p.getShortName()).append(':').append(p.getVersion()).append(';');
+            }
+        }
+        return digest(b.toString());
+    }
+
+    static String digest(String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Util.toHexString(md.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException x) {
+            throw new AssertionError(x);
+        }
+    }
+
+    /**
+     * Everything a compilation depends on.
+     */
+    static final class Key {
+        private final String className;
+        private final String sourceHash;
+        private final boolean sandbox;
+        private final String fingerprint;
+
+        Key(@NonNull String className, @NonNull String text, boolean sandbox, @NonNull String fingerprint) {
+            this(className, sandbox, fingerprint, digest(text));
+        }
+
+        private Key(String className, boolean sandbox, String fingerprint, String sourceHash) {
+            this.className = className;
+            this.sourceHash = sourceHash;
+            this.sandbox = sandbox;
+            this.fingerprint = fingerprint;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeUTF(className);
+            out.writeUTF(sourceHash);
+            out.writeBoolean(sandbox);
+            out.writeUTF(fingerprint);
+        }
+
+        static Key readFrom(DataInput in) throws IOException {
+            String className = in.readUTF();
+            String sourceHash = in.readUTF();
+            boolean sandbox = in.readBoolean();
+            return new Key(className, sandbox, in.readUTF(), sourceHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return sandbox == k.sandbox
+                    && className.equals(k.className)
+                    && sourceHash.equals(k.sourceHash)
+                    && fingerprint.equals(k.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(className, sourceHash, sandbox, fingerprint);
+        }
+
+        @Override
+        public String toString() {
+            return className + "@" + sourceHash.substring(0, 12) + (sandbox ? " (sandbox)" : "");
+        }
+    }
+
+    /**
+     * Classes from one compilation, in the order the compiler defined them, so that supertypes come first.
+     */
+    static final class Entry {
+        final String mainClass;
+        final List<String> names;
+        final List<byte[]> bytecode;
+        final long size;
+
+        private Entry(String mainClass, List<String> names, List<byte[]> bytecode, long size) {
+            this.mainClass = mainClass;
+            this.names = Collections.unmodifiableList(names);
+            this.bytecode = Collections.unmodifiableList(bytecode);
+            this.size = size;
+        }
+
+        /**
+         * Whether any class other than the script class and its nested classes is defined,
+         * which the compilation of some other source might refer to.
+         */
+        boolean definesOtherClasses() {
+            for (String name : names) {
+                if (!name.equals(mainClass) && !name.startsWith(mainClass + '$')) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeUTF(mainClass);
+            out.writeInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                out.writeUTF(names.get(i));
+                out.writeInt(bytecode.get(i).length);
+                out.write(bytecode.get(i));
+            }
+        }
+
+        static Entry readFrom(DataInput in) throws IOException {
+            String mainClass = in.readUTF();
+            int count = in.readInt();
+            List<String> names = new ArrayList<>(count);
+            List<byte[]> bytecode = new ArrayList<>(count);
+            long size = 0;
+            for (int i = 0; i < count; i++) {
+                names.add(in.readUTF());
+                byte[] code = new byte[in.readInt()];
+                in.readFully(code);
+                bytecode.add(code);
+                size += code.length;
+            }
+            if (!names.contains(mainClass)) {
+                throw new IOException("missing " + mainClass);
+            }
+            return new Entry(mainClass, names, bytecode, size);
+        }
+    }
+
+    /**
+     * Collects the classes defined by a single compilation.
+     */
+    static final class Recorder {
+        private final List<String> names = new ArrayList<>();
+        private final List<byte[]> bytecode = new ArrayList<>();
+        private long size;
+        /** Set if the compiler pulled in other sources, whose contents are not part of the {@link Key}. */
+        private boolean foreign;
+        /** Like {@link #names} etc. but including other sources. */
+        private final List<String> allNames = new ArrayList<>();
+        private final List<byte[]> allBytecode = new ArrayList<>();
+        private long allSize;
+
+        void record(@NonNull ClassNode classNode, @NonNull byte[] code, boolean fromPrimarySource) {
+            byte[] copy = code.clone();
+            allNames.add(classNode.getName());
+            allBytecode.add(copy);
+            allSize += copy.length;
+            if (!fromPrimarySource) {
+                LOGGER.log(Level.FINE, "not caching compilation which also defined {0}", classNode.getName());
+                foreign = true;
+                return;
+            }
+            names.add(classNode.getName());
+            bytecode.add(copy);
+            size += copy.length;
+        }
+
+        @CheckForNull
+        Entry toEntry(@NonNull String mainClass) {
+            if (foreign || !names.contains(mainClass)) {
+                return null;
+            }
+            return new Entry(mainClass, names, bytecode, size);
+        }
+
+        /**
+         * Like {@link #toEntry} but includes classes compiled from other sources on the class path,
+         * for {@link CompiledScripts} which can vouch that the class path of the build is unchanged.
+         */
+        @CheckForNull
+        Entry toEntryWithClassPath(@NonNull String mainClass) {
+            if (!names.contains(mainClass)) {
+                return null;
+            }
+            return new Entry(mainClass, new ArrayList<>(allNames), new ArrayList<>(allBytecode), allSize);
+        }
+    }
+}
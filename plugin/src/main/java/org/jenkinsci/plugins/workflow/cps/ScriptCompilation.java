@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import com.cloudbees.groovy.cps.Block;
+import com.cloudbees.groovy.cps.Builder;
+import com.cloudbees.groovy.cps.Continuable;
+import com.cloudbees.groovy.cps.MethodLocation;
+import com.cloudbees.groovy.cps.Outcome;
+import com.cloudbees.groovy.cps.impl.CpsCallableInvocation;
+import com.cloudbees.groovy.cps.impl.CpsFunction;
+import com.cloudbees.groovy.cps.sandbox.Trusted;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import groovy.lang.Script;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Compiles the text passed to {@link CpsScript#evaluate(String)} off the CPS VM thread.
+ * The calling {@link CpsThread} is suspended meanwhile, much as {@link DSL} suspends it for an asynchronous step,
+ * so that other branches of the build keep running; once compiled, the script is run in that thread as before.
+ * @see CpsGroovyShell#parseAsync
+ */
+final class ScriptCompilation extends ThreadTask implements Serializable {
+
+    /**
+     * {@code Continuable.suspend('evaluate', compilation).run()}
+     */
+    private static final CpsFunction EVALUATE;
+
+    static {
+        Builder b =
+                new Builder(new MethodLocation(ScriptCompilation.class, "evaluate")).contextualize(Trusted.INSTANCE);
+        Block suspend = b.staticCall(
+                1, Continuable.class, "suspend", b.constant("evaluate"), b.localVariable("compilation"));
+        EVALUATE = new CpsFunction(List.of("compilation"), b.functionCall(1, suspend, "run"));
+    }
+
+    private final String text;
+
+    /** Assigned by {@link #eval}. */
+    private @CheckForNull String className;
+
+    /** The thread waiting for this compilation, once {@link #eval} has suspended it. */
+    private @CheckForNull CpsThread thread;
+
+    private ScriptCompilation(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Like {@code GroovyShell.evaluate(text)}, for a call from CPS-transformed code.
+     * @return never; the CPS interpreter picks up the thrown invocation
+     */
+    static Object evaluate(String text) {
+        throw new CpsCallableInvocation("evaluate", EVALUATE, null, new ScriptCompilation(text));
+    }
+
+    @Override
+    protected ThreadTaskResult eval(CpsThread cur) {
+        CpsFlowExecution execution = cur.getExecution();
+        Script reused = execution.reuseScript(text);
+        if (reused != null) {
+            return ThreadTaskResult.resumeWith(new Outcome(reused, null));
+        }
+        className = execution.getNextScriptName(null);
+        CompletableFuture<Script> script = execution.parseAsync(text, text, className);
+        if (script.isDone()) {
+            return ThreadTaskResult.resumeWith(outcome(script));
+        }
+        thread = cur;
+        cur.getGroup().compiling(this);
+        whenParsed(cur, script);
+        return ThreadTaskResult.suspendWith(new Outcome(this, null));
+    }
+
+    /**
+     * Starts the compilation again after the program was loaded from disk.
+     */
+    void start(CpsFlowExecution execution) {
+        if (thread != null && className != null) {
+            whenParsed(thread, execution.parseAsync(text, text, className));
+        }
+    }
+
+    private void whenParsed(CpsThread thread, CompletableFuture<Script> script) {
+        script.whenComplete((s, x) -> {
+            thread.getGroup().compiled(this);
+            thread.resume(outcome(script));
+        });
+    }
+
+    private static Outcome outcome(CompletableFuture<Script> script) {
+        try {
+            return new Outcome(script.get(), null);
+        } catch (ExecutionException x) {
+            return new Outcome(null, x.getCause());
+        } catch (InterruptedException x) { // not supposed to happen once done
+            return new Outcome(null, x);
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,213 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyShell;
+import groovy.lang.GroovySystem;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+
+/**
+ * Classes compiled from trusted library sources, shared by builds using the same versions of the same libraries.
+ *
+ * <p>A library is normally added to the {@linkplain CpsFlowExecution#getTrustedShell trusted shell} of each build
+ * with {@link GroovyClassLoader#addURL}, so its sources are compiled and loaded again by every build.
+ * A {@linkplain GroovyShellDecorator#forTrusted trusted} {@link GroovyShellDecorator} may instead call
+ * {@link #register} from {@link GroovyShellDecorator#configureShell}, identifying the library and its content.
+ * The sources are then loaded by a class loader (a tier) shared with other builds which register the same libraries,
+ * in the same order, with the same compiler configuration;
+ * the trusted shell of each build delegates to it.
+ * Each library registered after the first gets a tier whose parent is the tier of those before it.
+ *
+ * <p>Shared classes, including any static state they keep, outlive a single build,
+ * so this is only suitable for libraries which do not keep per-build state in static fields.
+ * For the same reason they are compiled as by a trusted shell belonging to no build:
+ * {@link GroovyShellDecorator#configureCompiler} is passed a null execution.
+ *
+ * <p>Tiers are reference counted: each build holds its latest tier until its class loaders are closed,
+ * and each tier holds its parent.
+ * A tier is closed once nothing holds it and it is not among the {@code MAX_TIERS} most recently used.
+ */
+public final class TrustedClassCache {
+
+    private static final Logger LOGGER = Logger.getLogger(TrustedClassCache.class.getName());
+
+    /**
+     * Number of tiers beyond which those no build uses are closed; zero disables sharing.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "non-final for modification via script console")
+    static int MAX_TIERS = SystemProperties.getInteger(TrustedClassCache.class.getName() + ".MAX_TIERS", 20);
+
+    /** Least recently used first. */
+    private static final Map<String, Tier> TIERS = new LinkedHashMap<>(16, 0.75f, true);
+
+    private TrustedClassCache() {}
+
+    static boolean isEnabled() {
+        return MAX_TIERS > 0;
+    }
+
+    /**
+     * Makes a library available to a build through a class loader shared with other builds.
+     * @param execution as passed to {@link GroovyShellDecorator#configureShell}
+     * @param shell the trusted shell passed to {@link GroovyShellDecorator#configureShell}
+     * @param library identifies the library, such as its name
+     * @param contentHash identifies the exact content of {@code roots}, such as a commit hash
+     * @param roots source directories, as would otherwise be passed to {@link GroovyClassLoader#addURL}
+     * @return false if the classes cannot be shared, in which case the caller should add {@code roots} as usual
+     */
+    public static boolean register(
+            @CheckForNull CpsFlowExecution execution,
+            @NonNull GroovyShell shell,
+            @NonNull String library,
+            @NonNull String contentHash,
+            @NonNull URL... roots) {
+        if (execution == null || !isEnabled() || !(shell instanceof CpsGroovyShell)) {
+            return false;
+        }
+        CpsGroovyShell cps = (CpsGroovyShell) shell;
+        String fingerprint = cps.getCompilationFingerprint();
+        if (!cps.shareable || fingerprint == null) {
+            LOGGER.fine(() -> "cannot share " + library + " in " + execution);
+            return false;
+        }
+        Tier previous = cps.getSharedTier();
+        String key = ScriptClassCache.digest(
+                (previous != null ? previous.key : fingerprint + '|' + GroovySystem.getVersion()) + '|'
+                        + library.length() + ':' + library + '@' + contentHash);
+        Tier tier = acquire(key, previous, () -> {
+            LOGGER.fine(() -> "loading " + library + "@" + contentHash + " for sharing");
+            ClassLoader parent = previous != null ? previous.loader : CpsGroovyShellFactory.makeClassLoader(null);
+            // not the configuration of this build, which must not be kept by the tier
+            return CpsGroovyShell.newSharedLoader(parent, CpsGroovyShellFactory.makeSharedConfig(), roots);
+        });
+        if (!cps.setSharedTier(tier)) {
+            release(tier);
+            return false;
+        }
+        if (previous != null) {
+            release(previous); // now held by tier
+        }
+        return true;
+    }
+
+    private static synchronized Tier acquire(
+            String key, @CheckForNull Tier parent, Supplier<GroovyClassLoader> loaderFactory) {
+        Tier tier = TIERS.get(key);
+        if (tier == null) {
+            tier = new Tier(key, parent, loaderFactory.get());
+            if (parent != null) {
+                parent.references++;
+            }
+            TIERS.put(key, tier);
+        }
+        tier.references++;
+        trim();
+        return tier;
+    }
+
+    /**
+     * Called when a build no longer needs a tier.
+     */
+    static synchronized void release(@NonNull Tier tier) {
+        if (tier.references <= 0) {
+            LOGGER.warning(() -> "overreleased " + tier);
+            return;
+        }
+        tier.references--;
+        trim();
+    }
+
+    /**
+     * Closes unused tiers beyond {@link #MAX_TIERS}, least recently used first.
+     * Closing a tier may leave its parent unused in turn, so this repeats until nothing more can be closed.
+     */
+    private static void trim() {
+        boolean closed = true;
+        while (closed && TIERS.size() > Math.max(MAX_TIERS, 0)) {
+            closed = false;
+            Iterator<Tier> it = TIERS.values().iterator();
+            while (it.hasNext()) {
+                Tier tier = it.next();
+                if (tier.references == 0) {
+                    it.remove();
+                    tier.close();
+                    if (tier.parent != null) {
+                        tier.parent.references--;
+                    }
+                    closed = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    static synchronized int size() {
+        return TIERS.size();
+    }
+
+    /**
+     * A shared class loader for a sequence of libraries.
+     */
+    static final class Tier {
+        final String key;
+        final @CheckForNull Tier parent;
+        final GroovyClassLoader loader;
+        /** Builds and child tiers using this one; guarded by {@link TrustedClassCache}. */
+        private int references;
+
+        private Tier(String key, @CheckForNull Tier parent, GroovyClassLoader loader) {
+            this.key = key;
+            this.parent = parent;
+            this.loader = loader;
+        }
+
+        /**
+         * The loaders of this tier and its parents.
+         */
+        List<ClassLoader> loaders() {
+            List<ClassLoader> loaders = new ArrayList<>();
+            for (Tier t = this; t != null; t = t.parent) {
+                loaders.add(t.loader);
+            }
+            return loaders;
+        }
+
+        private void close() {
+            LOGGER.fine(() -> "closing " + this);
+            // do not clean up parents, which may still be in use
+            Set<ClassLoader> encounteredLoaders = new HashSet<>();
+            if (parent != null) {
+                encounteredLoaders.addAll(parent.loaders());
+            }
+            try {
+                CpsFlowExecution.cleanUpLoader(loader, encounteredLoaders, new HashSet<>());
+            } catch (Exception x) {
+                LOGGER.log(Level.WARNING, "failed to clean up memory from " + this, x);
+            }
+            try {
+                loader.close();
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "failed to close " + this, x);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "TrustedClassCache.Tier[" + key.substring(0, 12) + "]";
+        }
+    }
+}
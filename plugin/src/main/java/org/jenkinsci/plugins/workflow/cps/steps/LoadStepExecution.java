@@ -1,6 +1,5 @@
 package org.jenkinsci.plugins.workflow.cps.steps;
 
-import groovy.lang.Script;
 import hudson.FilePath;
 import hudson.model.TaskListener;
 import org.codehaus.groovy.control.MultipleCompilationErrorsException;
@@ -9,6 +8,7 @@ import org.jenkinsci.plugins.workflow.cps.CpsFlowExecution;
 import org.jenkinsci.plugins.workflow.cps.CpsStepContext;
 import org.jenkinsci.plugins.workflow.cps.CpsThread;
 import org.jenkinsci.plugins.workflow.cps.replay.ReplayAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
 import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
@@ -22,6 +22,16 @@ public class LoadStepExecution extends AbstractStepExecutionImpl {
 
     private transient LoadStep step;
 
+    private String path;
+
+    /** The script being compiled, if any, as read from {@link #path}. */
+    private String source;
+
+    /** What is actually compiled, normally the same as {@link #source}. */
+    private String text;
+
+    private String clazz;
+
     LoadStepExecution(LoadStep step, StepContext context) {
         super(context);
         this.step = step;
@@ -36,7 +46,8 @@ public class LoadStepExecution extends AbstractStepExecutionImpl {
 
         CpsFlowExecution execution = t.getExecution();
 
-        String text = cwd.child(step.getPath()).readToString();
+        String source = cwd.child(step.getPath()).readToString();
+        String text = source;
         String clazz = execution.getNextScriptName(step.getPath());
         String newText = ReplayAction.replace(execution, clazz);
         if (newText != null) {
@@ -44,27 +55,52 @@ public class LoadStepExecution extends AbstractStepExecutionImpl {
             text = newText;
         }
 
-        Script script;
-        try {
-            script = execution.getShell().parse(text);
-        } catch (MultipleCompilationErrorsException e) {
-            // Convert to a serializable exception, see JENKINS-40109.
-            throw new CpsCompilationErrorsException(e);
-        }
-
-        // execute body as another thread that shares the same head as this thread
-        // as the body can pause.
-        cps.newBodyInvoker(t.getGroup().export(script), true)
-                .withDisplayName(step.getPath())
-                .withCallback(BodyExecutionCallback.wrap(cps))
-                .start(); // when the body is done, the load step is done
-
+        this.path = step.getPath();
+        this.source = source;
+        this.text = text;
+        this.clazz = clazz;
+        compile(execution, cps);
         return false;
     }
 
+    /**
+     * Compiles {@link #text} off the CPS VM thread, unless the same {@link #source} was loaded before,
+     * then runs it as another thread that shares the same head as this thread, as the body can pause.
+     */
+    private void compile(CpsFlowExecution execution, CpsStepContext cps) {
+        execution.loadAsync(cps, source, text, clazz).whenComplete((invoker, x) -> {
+            source = null;
+            text = null;
+            clazz = null;
+            if (x instanceof MultipleCompilationErrorsException) {
+                // Convert to a serializable exception, see JENKINS-40109.
+                cps.onFailure(new CpsCompilationErrorsException((MultipleCompilationErrorsException) x));
+            } else if (x != null) {
+                cps.onFailure(x);
+            } else {
+                invoker.withDisplayName(path)
+                        .withCallback(BodyExecutionCallback.wrap(cps))
+                        .start(); // when the body is done, the load step is done
+            }
+        });
+    }
+
     @Override
     public void onResume() {
-        // do nothing
+        if (source != null && text != null && clazz != null) {
+            // restarted while compiling
+            CpsStepContext cps = (CpsStepContext) getContext();
+            try {
+                compile((CpsFlowExecution) cps.get(FlowNode.class).getExecution(), cps);
+            } catch (Exception x) {
+                cps.onFailure(x);
+            }
+        }
+    }
+
+    @Override
+    public boolean blocksRestart() {
+        return text != null;
     }
 
     private static final long serialVersionUID = 1L;
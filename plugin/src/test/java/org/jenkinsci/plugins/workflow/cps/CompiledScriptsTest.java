@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.BuildWatcher;
+import org.jvnet.hudson.test.FlagRule;
+import org.jvnet.hudson.test.JenkinsSessionRule;
+
+public class CompiledScriptsTest {
+
+    @ClassRule
+    public static BuildWatcher buildWatcher = new BuildWatcher();
+
+    @Rule
+    public JenkinsSessionRule sessions = new JenkinsSessionRule();
+
+    /** So that anything reused on resume must have come from disk. */
+    @Rule
+    public FlagRule<Integer> noSharedCache =
+            new FlagRule<>(() -> ScriptClassCache.MAX_ENTRIES, v -> ScriptClassCache.MAX_ENTRIES = v, 0);
+
+    @Test
+    public void reusedOnResume() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition(
+                    "def helper = evaluate('class Helper { String twice(s) { s + s } }; new Helper()')\n"
+                            + "semaphore 'wait'\n"
+                            + "echo helper.twice('ab')",
+                    true));
+            WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("wait/1", b);
+            CpsFlowExecution e = (CpsFlowExecution) b.getExecution();
+            e.waitForSuspension();
+            assertTrue(e.getCompiledScriptsFile().isFile());
+            assertThat(timings(b), not(hasKey("parseCacheHit")));
+        });
+        sessions.then(r -> {
+            WorkflowRun b = r.jenkins.getItemByFullName("p", WorkflowJob.class).getLastBuild();
+            SemaphoreStep.success("wait/1", null);
+            r.assertLogContains("abab", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+            assertThat(timings(b), hasKey("parseCacheHit"));
+            assertFalse(((CpsFlowExecution) b.getExecution()).getCompiledScriptsFile().exists());
+        });
+    }
+
+    @Test
+    public void corruptFileIgnored() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition("semaphore 'wait'; echo 'I am done'", true));
+            WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("wait/1", b);
+            CpsFlowExecution e = (CpsFlowExecution) b.getExecution();
+            e.waitForSuspension();
+            File f = e.getCompiledScriptsFile();
+            byte[] data = Files.readAllBytes(f.toPath());
+            data[data.length - 1] ^= 1;
+            Files.write(f.toPath(), data);
+        });
+        sessions.then(r -> {
+            WorkflowRun b = r.jenkins.getItemByFullName("p", WorkflowJob.class).getLastBuild();
+            SemaphoreStep.success("wait/1", null);
+            r.assertLogContains("I am done", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+        });
+    }
+
+    private static Map<String, ?> timings(WorkflowRun b) {
+        return ((CpsFlowExecution) b.getExecution()).liveTimings;
+    }
+}
@@ -32,12 +32,16 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsInRelativeOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.emptyArray;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -77,6 +81,8 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.ConsoleHandler;
@@ -86,6 +92,12 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.FileUtils;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
 import org.htmlunit.ElementNotFoundException;
 import org.htmlunit.FailingHttpStatusCodeException;
 import org.htmlunit.HttpMethod;
@@ -95,6 +107,7 @@ import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 import org.jenkinsci.plugins.workflow.actions.TimingAction;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowExecution.TimingFlowNodeStorage;
 import org.jenkinsci.plugins.workflow.cps.GroovySourceFileAllowlist.DefaultAllowlist;
+import org.jenkinsci.plugins.workflow.flow.FlowDurabilityHint;
 import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.flow.FlowExecutionList;
 import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
@@ -102,6 +115,7 @@ import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.graphanalysis.DepthFirstScanner;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.job.properties.DurabilityHintJobProperty;
 import org.jenkinsci.plugins.workflow.pickles.Pickle;
 import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
 import org.jenkinsci.plugins.workflow.steps.BodyInvoker;
@@ -118,6 +132,7 @@ import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExternalResource;
 import org.jvnet.hudson.test.BuildWatcher;
 import org.jvnet.hudson.test.FlagRule;
 import org.jvnet.hudson.test.Issue;
@@ -144,6 +159,41 @@ public class CpsFlowExecutionTest {
     @Rule
     public FlagRule<Boolean> secretField =
             new FlagRule<>(() -> CpsFlowExecutionTest.SECRET, v -> CpsFlowExecutionTest.SECRET = v);
+
+    @Rule
+    public FlagRule<Long> idleCheckpointSeconds = new FlagRule<>(
+            () -> CpsThreadGroup.IDLE_CHECKPOINT_SECONDS, v -> CpsThreadGroup.IDLE_CHECKPOINT_SECONDS = v);
+
+    @Rule
+    public FlagRule<Integer> compileThreads =
+            new FlagRule<>(() -> CpsGroovyShell.COMPILE_THREADS, v -> CpsGroovyShell.COMPILE_THREADS = v);
+
+    @Rule
+    public FlagRule<Integer> scriptClassCacheEntries =
+            new FlagRule<>(() -> ScriptClassCache.MAX_ENTRIES, v -> ScriptClassCache.MAX_ENTRIES = v);
+
+    /** So that each test compiles its scripts at least once. */
+    @Rule
+    public ExternalResource scriptClassCache = new ExternalResource() {
+        @Override
+        protected void before() {
+            ScriptClassCache.clear();
+        }
+
+        @Override
+        protected void after() {
+            ScriptClassCache.clear();
+        }
+    };
+
+    @Rule
+    public FlagRule<Boolean> compiledScriptsEnabled =
+            new FlagRule<>(() -> CompiledScripts.ENABLED, v -> CompiledScripts.ENABLED = v);
+
+    @Rule
+    public FlagRule<Boolean> asyncCompilation =
+            new FlagRule<>(() -> CpsGroovyShell.ASYNC_COMPILATION, v -> CpsGroovyShell.ASYNC_COMPILATION = v);
+
     /** We intentionally avoid using the static fields so that tests can call setProperty before the classes are initialized. */
     @Rule
     public FlagRule<String> groovySourceFileAllowlistDisabled =
@@ -357,6 +407,226 @@ public class CpsFlowExecutionTest {
         });
     }
 
+    @Test
+    public void programWrittenBeforeSuspension() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition("semaphore 'wait'; echo 'I am done'", true));
+            WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("wait/1", b);
+            CpsFlowExecution e = (CpsFlowExecution) b.getExecution();
+            e.waitForSuspension();
+            assertTrue(e.getProgramDataFile().isFile());
+            // no snapshots left behind by the background writer
+            assertThat(b.getRootDir().list((dir, name) -> name.startsWith("atomic")), emptyArray());
+        });
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.getItemByFullName("p", WorkflowJob.class);
+            WorkflowRun b = p.getLastBuild();
+            SemaphoreStep.success("wait/1", null);
+            r.assertLogContains("I am done", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+            assertFalse(((CpsFlowExecution) b.getExecution()).getProgramDataFile().exists());
+        });
+    }
+
+    @Test
+    public void idleCheckpoint() throws Throwable {
+        sessions.then(r -> {
+            CpsThreadGroup.IDLE_CHECKPOINT_SECONDS = 1;
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.addProperty(new DurabilityHintJobProperty(FlowDurabilityHint.PERFORMANCE_OPTIMIZED));
+            p.setDefinition(new CpsFlowDefinition("semaphore 'wait'; echo 'I am done'", true));
+            WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("wait/1", b);
+            CpsFlowExecution e = (CpsFlowExecution) b.getExecution();
+            CpsThreadGroup g = e.programPromise.get();
+            await().until(g::isCheckpointedWhileIdle);
+            // checkpointed even though this durability level would not otherwise save it while waiting
+            e.waitForSuspension();
+            assertTrue(e.getProgramDataFile().isFile());
+            SemaphoreStep.success("wait/1", null);
+            r.assertLogContains("I am done", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+        });
+    }
+
+    @Test
+    public void parallelReparse() throws Throwable {
+        sessions.then(r -> {
+            // so that loaded scripts really are compiled again on resume
+            ScriptClassCache.MAX_ENTRIES = 0;
+            CompiledScripts.ENABLED = false;
+            CpsGroovyShell.COMPILE_THREADS = 4;
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition(
+                    "def a = evaluate('def twice(x) { x * 2 }; this')\n"
+                            + "def b = evaluate('class Greeter { def greet(n) { \"hello \" + n } }; new Greeter()')\n"
+                            + "def c = evaluate('new Greeter()')\n"
+                            + "def d = evaluate('def thrice(x) { x * 3 }; this')\n"
+                            + "semaphore 'wait'\n"
+                            + "echo \"${a.twice(2)} ${b.greet('b')} ${c.greet('c')} ${d.thrice(2)}\"",
+                    true));
+            WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("wait/1", b);
+            assertEquals(4, ((CpsFlowExecution) b.getExecution()).loadedScripts.size());
+        });
+        sessions.then(r -> {
+            WorkflowRun b = r.jenkins.getItemByFullName("p", WorkflowJob.class).getLastBuild();
+            SemaphoreStep.success("wait/1", null);
+            r.assertLogContains("4 hello b hello c 6", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+        });
+    }
+
+    @Test
+    public void evaluateOffVmThread() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition(
+                    "parallel a: { echo \"a=${evaluate('21 * 2')}\" },\n"
+                            + "  b: { echo \"b=${evaluate('def x = 3; x * x')}\" }\n"
+                            + "try { evaluate('bad, syntax') } catch (e) { echo \"caught ${e.message}\" }\n"
+                            + "echo \"c=${evaluate('[1, 2, 3].sum()')}\"",
+                    true));
+            WorkflowRun b = r.buildAndAssertSuccess(p);
+            r.assertLogContains("a=42", b);
+            r.assertLogContains("b=9", b);
+            r.assertLogContains("unexpected token: bad", b);
+            r.assertLogContains("c=6", b);
+            CpsFlowExecution e = (CpsFlowExecution) b.getExecution();
+            assertEquals(Set.of("Script1", "Script2", "Script3"), e.loadedScripts.keySet());
+            assertThat(e.liveTimings, hasKey("parse"));
+            assertThat(e.liveTimings, hasKey("defineCompiled"));
+        });
+    }
+
+    @Test
+    public void evaluateReusedOnVmThread() throws Throwable {
+        sessions.then(r -> {
+            CpsGroovyShell.ASYNC_COMPILATION = false;
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition(
+                    "echo \"a=${evaluate('6 * 7')}\"\n"
+                            + "echo \"b=${evaluate('6 * 7')}\"\n"
+                            + "semaphore 'wait'\n"
+                            + "echo \"c=${evaluate('6 * 7')}\"",
+                    true));
+            WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("wait/1", b);
+            r.assertLogContains("b=42", b);
+            assertEquals(Set.of("Script1"), ((CpsFlowExecution) b.getExecution()).loadedScripts.keySet());
+        });
+        sessions.then(r -> {
+            WorkflowRun b = r.jenkins.getItemByFullName("p", WorkflowJob.class).getLastBuild();
+            SemaphoreStep.success("wait/1", null);
+            r.assertLogContains("c=42", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+            assertEquals(Set.of("Script1"), ((CpsFlowExecution) b.getExecution()).loadedScripts.keySet());
+        });
+    }
+
+    @Test
+    public void evaluateClassAlreadyDefined() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition(
+                    "echo \"first=${evaluate('class H { def v() { 1 } }; new H().v()')}\"\n"
+                            + "def second\n"
+                            + "try { second = evaluate('class H { def v() { 2 } }; new H().v()') }"
+                            + " catch (Throwable x) { second = x.class.name }\n"
+                            + "echo \"second=$second\"",
+                    false));
+            WorkflowRun b = r.buildAndAssertSuccess(p);
+            r.assertLogContains("first=1", b);
+            r.assertLogContains("second=", b);
+            r.assertLogNotContains("second=1", b);
+        });
+    }
+
+    @Test
+    public void evaluateWithDecoratedCompilation() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition("echo \"result=${evaluate('6 * 7')}\"", true));
+            WorkflowRun b = r.buildAndAssertSuccess(p);
+            r.assertLogContains("result=42", b);
+            assertThat(RecordingCompilation.threads, not(empty()));
+            assertThat(RecordingCompilation.threads, everyItem(not(startsWith("CpsGroovyShell.compiler"))));
+            assertThat(((CpsFlowExecution) b.getExecution()).liveTimings, not(hasKey("defineCompiled")));
+        });
+    }
+
+    /**
+     * Records the threads compiling scripts for builds.
+     */
+    @TestExtension("evaluateWithDecoratedCompilation")
+    public static final class RecordingCompilation extends GroovyShellDecorator {
+        static final List<String> threads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void configureCompiler(@CheckForNull CpsFlowExecution context, CompilerConfiguration cc) {
+            if (context == null) {
+                return;
+            }
+            cc.addCompilationCustomizers(new CompilationCustomizer(CompilePhase.CONVERSION) {
+                @Override
+                public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) {
+                    if (classNode.isScript()) {
+                        threads.add(Thread.currentThread().getName());
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    public void restartWhileEvaluating() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition("echo \"result=${evaluate('6 * 7')}\"", true));
+            holdCompilers();
+            p.scheduleBuild2(0).waitForStart();
+            await().until(() -> CpsGroovyShell.compilers(1).getQueue().size() == 1);
+        });
+        sessions.then(r -> {
+            // lets the compilation from before the restart run, which no longer matters
+            compilersHeld.release();
+            WorkflowRun b = r.jenkins.getItemByFullName("p", WorkflowJob.class).getLastBuild();
+            r.assertLogContains("result=42", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+        });
+    }
+
+    @Test
+    public void restartWhileLoading() throws Throwable {
+        sessions.then(r -> {
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            r.jenkins.getWorkspaceFor(p).child("lib.groovy").write("'loaded'", null);
+            p.setDefinition(new CpsFlowDefinition("node {echo \"result=${load 'lib.groovy'}\"}", true));
+            holdCompilers();
+            p.scheduleBuild2(0).waitForStart();
+            await().until(() -> CpsGroovyShell.compilers(1).getQueue().size() == 1);
+        });
+        sessions.then(r -> {
+            // lets the compilation from before the restart run, which no longer matters
+            compilersHeld.release();
+            WorkflowRun b = r.jenkins.getItemByFullName("p", WorkflowJob.class).getLastBuild();
+            r.assertLogContains("result=loaded", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+        });
+    }
+
+    private static final Semaphore compilersHeld = new Semaphore(0);
+
+    /**
+     * Occupies the only thread compiling off the CPS VM thread until {@link #compilersHeld} is released,
+     * so that the next script to be compiled there waits in its queue.
+     */
+    private static void holdCompilers() throws InterruptedException {
+        CpsGroovyShell.COMPILE_THREADS = 1;
+        Semaphore holding = new Semaphore(0);
+        CpsGroovyShell.compilers(1).execute(() -> {
+            holding.release();
+            compilersHeld.acquireUninterruptibly();
+        });
+        assertTrue(holding.tryAcquire(1, TimeUnit.MINUTES));
+    }
+
     @Issue("JENKINS-34256")
     @Test
     public void quietDownThenCancelQuietDown() throws Throwable {
@@ -571,8 +841,14 @@ public class CpsFlowExecutionTest {
             // message can be duplicated
             assertThat(logger.getRecords(), not(empty()));
             assertEquals(
-                    CpsFlowExecution.TimingKind.values().length,
-                    ((CpsFlowExecution) b.getExecution()).liveTimings.keySet().size());
+                    // every kind but interrupt and defineCompiled, since this build is never interrupted
+                    // and evaluates nothing
+                    Arrays.stream(CpsFlowExecution.TimingKind.values())
+                            .map(Enum::name)
+                            .filter(k -> !k.equals(CpsFlowExecution.TimingKind.interrupt.name())
+                                    && !k.equals(CpsFlowExecution.TimingKind.defineCompiled.name()))
+                            .collect(Collectors.toSet()),
+                    ((CpsFlowExecution) b.getExecution()).liveTimings.keySet());
         });
     }
 
@@ -24,14 +24,22 @@
 
 package org.jenkinsci.plugins.workflow.cps;
 
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import com.google.common.util.concurrent.FutureCallback;
 import hudson.AbortException;
 import hudson.model.Result;
 import hudson.security.ACL;
 import hudson.security.ACLContext;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import jenkins.model.CauseOfInterruption;
 import jenkins.model.InterruptedBuildAction;
 import jenkins.model.Jenkins;
@@ -78,6 +86,84 @@ public class CpsThreadTest {
         r.assertLogNotContains("\tat ", b);
     }
 
+    @Test
+    public void interruptBusyLoop() throws Exception {
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("echo 'spinning'; long i = 0; while (true) {i++}", true));
+        WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+        r.waitForMessage("spinning", b);
+        b.getExecutor().interrupt();
+        r.assertBuildStatus(Result.ABORTED, r.waitForCompletion(b));
+        assertTrue(((CpsFlowExecution) b.getExecution())
+                .liveTimings
+                .containsKey(CpsFlowExecution.TimingKind.interrupt.name()));
+    }
+
+    @Test
+    public void turnEndsAfterTimeSlice() throws Exception {
+        long slice = CpsThreadGroup.TURN_TIME_SLICE_MS;
+        long budget = CpsThreadGroup.SAFEPOINT_TIME_BUDGET_MS;
+        CpsThreadGroup.TURN_TIME_SLICE_MS = 1;
+        CpsThreadGroup.SAFEPOINT_TIME_BUDGET_MS = 1;
+        try {
+            WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition(
+                    "def branches = [:]\n"
+                            + "for (int i = 0; i < 10; i++) {\n"
+                            + "  branches[\"spin$i\"] = {while (" + CpsThreadTest.class.getName() + ".spin()) {}}\n"
+                            + "}\n"
+                            + "parallel branches",
+                    false));
+            WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+            await().until(SPINS::get, greaterThan(100));
+            CpsFlowExecution e = (CpsFlowExecution) b.getExecutionPromise().get();
+            // The second callback is queued behind the next turn of the spinning branches,
+            // which should end after the first of them, rather than running each branch once.
+            CompletableFuture<Integer> spinsBetween = new CompletableFuture<>();
+            e.runInCpsVmThread(new FutureCallback<>() {
+                @Override
+                public void onSuccess(CpsThreadGroup g) {
+                    int before = SPINS.get();
+                    e.runInCpsVmThread(new FutureCallback<>() {
+                        @Override
+                        public void onSuccess(CpsThreadGroup g) {
+                            spinsBetween.complete(SPINS.get() - before);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            spinsBetween.completeExceptionally(t);
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    spinsBetween.completeExceptionally(t);
+                }
+            });
+            assertThat(spinsBetween.get(), lessThan(5));
+            spinning = false;
+            r.assertBuildStatusSuccess(r.waitForCompletion(b));
+        } finally {
+            CpsThreadGroup.TURN_TIME_SLICE_MS = slice;
+            CpsThreadGroup.SAFEPOINT_TIME_BUDGET_MS = budget;
+            spinning = true;
+        }
+    }
+
+    private static final AtomicInteger SPINS = new AtomicInteger();
+    private static volatile boolean spinning = true;
+
+    /**
+     * Called by {@link #turnEndsAfterTimeSlice} in a loop, taking long enough that each chunk exceeds the slice.
+     */
+    public static boolean spin() throws InterruptedException {
+        SPINS.incrementAndGet();
+        Thread.sleep(5);
+        return spinning;
+    }
+
     public static class UnkillableStep extends AbstractStepImpl {
         @DataBoundConstructor
         public UnkillableStep() {}
@@ -0,0 +1,107 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import jdk.jfr.consumer.RecordingStream;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Runs many compute-bound builds at once and reports platform thread count, heap usage,
+ * and how often virtual threads were pinned to their carrier.
+ * Skipped unless {@code -DCpsVmExecutorServiceStressTest.builds=3000} (say) is passed;
+ * compare runs with and without {@code -Dorg.jenkinsci.plugins.workflow.cps.CpsVmExecutorService.VIRTUAL_THREADS=true}.
+ * {@link ThreadMXBean} counts only platform threads, which includes the carriers of virtual threads,
+ * so it shows how many native threads the builds needed, not how many virtual threads ran them.
+ */
+public class CpsVmExecutorServiceStressTest {
+
+    private static final Logger LOGGER = Logger.getLogger(CpsVmExecutorServiceStressTest.class.getName());
+
+    private static final int BUILDS =
+            Integer.getInteger(CpsVmExecutorServiceStressTest.class.getSimpleName() + ".builds", 0);
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void manyConcurrentBuilds() throws Exception {
+        assumeTrue("set -D" + CpsVmExecutorServiceStressTest.class.getSimpleName() + ".builds to run", BUILDS > 0);
+        List<WorkflowJob> jobs = new ArrayList<>();
+        for (int i = 0; i < BUILDS; i++) {
+            WorkflowJob p = r.createProject(WorkflowJob.class, "p" + i);
+            p.setDefinition(new CpsFlowDefinition(
+                    "def x = 0; for (int i = 0; i < 200000; i++) { x += i }; echo \"done ${x}\"", true));
+            jobs.add(p);
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        int baselineThreads = threads.getThreadCount();
+        long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+        AtomicInteger peakThreads = new AtomicInteger(baselineThreads);
+        AtomicLong peakHeap = new AtomicLong(baselineHeap);
+        AtomicInteger pinned = new AtomicInteger();
+        AtomicLong pinnedNanos = new AtomicLong();
+        RecordingStream pinning = new RecordingStream();
+        // only emitted on Java 21+; each pinned virtual thread blocked its carrier for the duration
+        pinning.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+        pinning.onEvent("jdk.VirtualThreadPinned", e -> {
+            pinned.incrementAndGet();
+            pinnedNanos.addAndGet(e.getDuration().toNanos());
+        });
+        pinning.startAsync();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(
+                () -> {
+                    peakThreads.accumulateAndGet(threads.getThreadCount(), Math::max);
+                    peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                },
+                0,
+                50,
+                TimeUnit.MILLISECONDS);
+        try {
+            List<WorkflowRun> runs = new ArrayList<>();
+            for (WorkflowJob p : jobs) {
+                runs.add(p.scheduleBuild2(0).waitForStart());
+            }
+            for (WorkflowRun b : runs) {
+                r.assertBuildStatusSuccess(r.waitForCompletion(b));
+            }
+        } finally {
+            sampler.shutdownNow();
+            pinning.close();
+        }
+        LOGGER.info(() -> String.format(
+                "%d builds, virtual threads %s: peak %d platform threads (%d before), "
+                        + "peak heap %d MiB (%d MiB before), %d pinned virtual threads for %d ms in all",
+                BUILDS,
+                CpsVmExecutorService.VIRTUAL_THREADS,
+                peakThreads.get(),
+                baselineThreads,
+                peakHeap.get() >> 20,
+                baselineHeap >> 20,
+                pinned.get(),
+                pinnedNanos.get() / 1_000_000));
+        if (CpsVmExecutorService.VIRTUAL_THREADS) {
+            assertThat(peakThreads.get() - baselineThreads, lessThan(Math.max(BUILDS / 2, 100)));
+        }
+    }
+}
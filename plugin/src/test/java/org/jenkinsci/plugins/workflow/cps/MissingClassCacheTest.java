@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class MissingClassCacheTest {
+
+    @After
+    public void clear() {
+        MissingClassCache.clear();
+    }
+
+    @Test
+    public void missesAreRemembered() throws Exception {
+        CountingLoader parent = new CountingLoader();
+        ClassLoader l1 = MissingClassCache.wrap(parent);
+        assertThrows(ClassNotFoundException.class, () -> l1.loadClass("hudson.model.NoSuchThing"));
+        assertNull(l1.getResource("hudson/model/NoSuchThing.groovy"));
+        assertEquals(1, parent.classLookups.get());
+        assertEquals(1, parent.resourceLookups.get());
+        // shared with other loaders for the same plugins
+        ClassLoader l2 = MissingClassCache.wrap(parent);
+        assertThrows(ClassNotFoundException.class, () -> l2.loadClass("hudson.model.NoSuchThing"));
+        assertNull(l2.getResource("hudson/model/NoSuchThing.groovy"));
+        assertEquals(1, parent.classLookups.get());
+        assertEquals(1, parent.resourceLookups.get());
+    }
+
+    @Test
+    public void hitsAreNotRemembered() throws Exception {
+        CountingLoader parent = new CountingLoader();
+        ClassLoader l = MissingClassCache.wrap(parent);
+        assertNotNull(l.getResource("java/lang/String.class"));
+        assertNotNull(l.getResource("java/lang/String.class"));
+        assertEquals(2, parent.resourceLookups.get());
+    }
+
+    private static final class CountingLoader extends ClassLoader {
+        final AtomicInteger classLookups = new AtomicInteger();
+        final AtomicInteger resourceLookups = new AtomicInteger();
+
+        CountingLoader() {
+            super(MissingClassCacheTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            classLookups.incrementAndGet();
+            return super.loadClass(name, resolve);
+        }
+
+        @Override
+        public URL getResource(String name) {
+            resourceLookups.incrementAndGet();
+            return super.getResource(name);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.BuildWatcher;
+import org.jvnet.hudson.test.JenkinsSessionRule;
+
+public class ProgramDataCompressionTest {
+
+    @ClassRule
+    public static BuildWatcher buildWatcher = new BuildWatcher();
+
+    @Rule
+    public JenkinsSessionRule sessions = new JenkinsSessionRule();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final int compressionLevel = ProgramDataCompression.COMPRESSION_LEVEL;
+
+    @After
+    public void reset() {
+        ProgramDataCompression.COMPRESSION_LEVEL = compressionLevel;
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        byte[] data = "program state ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        File plain = tmp.newFile();
+        Files.write(plain.toPath(), data);
+        assertFalse(ProgramDataCompression.isCompressed(plain));
+        assertNull(ProgramDataCompression.inflate(plain));
+        ProgramDataCompression.COMPRESSION_LEVEL = 6;
+        File compressed = tmp.newFile();
+        ProgramDataCompression.compress(plain, compressed);
+        assertTrue(ProgramDataCompression.isCompressed(compressed));
+        assertTrue(compressed.length() < data.length / 10);
+        File inflated = ProgramDataCompression.inflate(compressed);
+        assertNotNull(inflated);
+        assertArrayEquals(data, Files.readAllBytes(inflated.toPath()));
+    }
+
+    @Test
+    public void staleInflatedFilesDeleted() throws Exception {
+        File dir = tmp.newFolder();
+        File plain = new File(dir, "plain");
+        Files.writeString(plain.toPath(), "program state", StandardCharsets.UTF_8);
+        ProgramDataCompression.COMPRESSION_LEVEL = 6;
+        File compressed = new File(dir, "program.dat");
+        ProgramDataCompression.compress(plain, compressed);
+        File stale = File.createTempFile("inflated", null, dir);
+        File inflated = ProgramDataCompression.inflate(compressed);
+        assertNotNull(inflated);
+        assertFalse(stale.exists());
+        assertTrue(inflated.isFile());
+        assertTrue(plain.isFile());
+    }
+
+    @Test
+    public void resumeAcrossFormats() throws Throwable {
+        sessions.then(r -> {
+            ProgramDataCompression.COMPRESSION_LEVEL = 1;
+            WorkflowJob p = r.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition(
+                    "def x = 'before'; semaphore 'one'; echo x; x = 'middle'; semaphore 'two'; echo x", true));
+            WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("one/1", b);
+            CpsFlowExecution e = (CpsFlowExecution) b.getExecution();
+            e.waitForSuspension();
+            assertTrue(ProgramDataCompression.isCompressed(e.getProgramDataFile()));
+        });
+        sessions.then(r -> {
+            // compressed file is read even once compression is turned off
+            ProgramDataCompression.COMPRESSION_LEVEL = 0;
+            WorkflowRun b = r.jenkins.getItemByFullName("p", WorkflowJob.class).getLastBuild();
+            SemaphoreStep.success("one/1", null);
+            SemaphoreStep.waitForStart("two/1", b);
+            CpsFlowExecution e = (CpsFlowExecution) b.getExecution();
+            e.waitForSuspension();
+            assertFalse(ProgramDataCompression.isCompressed(e.getProgramDataFile()));
+        });
+        sessions.then(r -> {
+            WorkflowRun b = r.jenkins.getItemByFullName("p", WorkflowJob.class).getLastBuild();
+            SemaphoreStep.success("two/1", null);
+            r.assertBuildStatusSuccess(r.waitForCompletion(b));
+            r.assertLogContains("before", b);
+            r.assertLogContains("middle", b);
+            assertTrue(((CpsFlowExecution) b.getExecution()).liveTimings.containsKey("loadProgram"));
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import groovy.lang.GroovyShell;
+import hudson.model.Run;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.BuildWatcher;
+import org.jvnet.hudson.test.FlagRule;
+import org.jvnet.hudson.test.JenkinsSessionRule;
+import org.jvnet.hudson.test.LoggerRule;
+import org.jvnet.hudson.test.TestExtension;
+
+public class ResumeCoordinatorTest {
+
+    @ClassRule
+    public static BuildWatcher buildWatcher = new BuildWatcher();
+
+    @Rule
+    public JenkinsSessionRule sessions = new JenkinsSessionRule();
+
+    @Rule
+    public FlagRule<Integer> maxConcurrentLoads = new FlagRule<>(
+            () -> ResumeCoordinator.MAX_CONCURRENT_LOADS, v -> ResumeCoordinator.MAX_CONCURRENT_LOADS = v, 1);
+
+    @Rule
+    public LoggerRule logging = new LoggerRule().record(ResumeCoordinator.class, Level.INFO).capture(10);
+
+    @Test
+    public void boundedResume() throws Throwable {
+        sessions.then(r -> {
+            // builds are found on startup in the order they were started
+            start(r.createProject(WorkflowJob.class, "p0"), 1);
+            WorkflowJob waiting = r.createProject(WorkflowJob.class, "waiting");
+            waiting.setDefinition(new CpsFlowDefinition("input 'proceed?'; echo 'approved'", true));
+            WorkflowRun w = waiting.scheduleBuild2(0).waitForStart();
+            r.waitForMessage("proceed?", w);
+            assertTrue(ResumeCoordinator.isWaiting((CpsFlowExecution) w.getExecution()));
+            start(r.createProject(WorkflowJob.class, "p1"), 2);
+            start(r.createProject(WorkflowJob.class, "p2"), 3);
+            LoadRecorder.resuming = true;
+        });
+        sessions.then(r -> {
+            await().until(ResumeCoordinator::getPending, is(0));
+            assertEquals(4, ResumeCoordinator.getResumed());
+            assertEquals(1, LoadRecorder.maxLoading.get());
+            // p0 was already loading before the others were found; the build waiting for input goes last
+            assertEquals(4, LoadRecorder.loaded.size());
+            assertEquals("p0", LoadRecorder.loaded.get(0));
+            assertThat(LoadRecorder.loaded.subList(1, 3), containsInAnyOrder("p1", "p2"));
+            assertEquals("waiting", LoadRecorder.loaded.get(3));
+            for (int i = 0; i < 3; i++) {
+                SemaphoreStep.success("wait/" + (i + 1), null);
+                WorkflowRun b = r.jenkins.getItemByFullName("p" + i, WorkflowJob.class).getLastBuild();
+                r.assertLogContains("done", r.assertBuildStatusSuccess(r.waitForCompletion(b)));
+            }
+            WorkflowRun w = r.jenkins.getItemByFullName("waiting", WorkflowJob.class).getLastBuild();
+            w.getAction(InputAction.class).getExecutions().get(0).proceed(null);
+            r.assertLogContains("approved", r.assertBuildStatusSuccess(r.waitForCompletion(w)));
+            assertEquals(List.of("Resumed 4 Pipeline builds; 0 failed to resume"), logging.getMessages());
+        });
+    }
+
+    private static void start(WorkflowJob p, int semaphore) throws Exception {
+        p.setDefinition(new CpsFlowDefinition("semaphore 'wait'; echo 'done'", true));
+        WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("wait/" + semaphore, b);
+        assertFalse(ResumeCoordinator.isWaiting((CpsFlowExecution) b.getExecution()));
+    }
+
+    /**
+     * Records the order in which builds are loaded on resume, holding up the first until all have been found,
+     * so that the others are queued behind it.
+     */
+    @TestExtension("boundedResume")
+    public static final class LoadRecorder extends GroovyShellDecorator {
+        static volatile boolean resuming;
+        static final List<String> loaded = new CopyOnWriteArrayList<>();
+        static final AtomicInteger maxLoading = new AtomicInteger();
+
+        @Override
+        public void configureShell(@CheckForNull CpsFlowExecution context, GroovyShell shell) {
+            if (context == null || !resuming) {
+                return;
+            }
+            String name;
+            try {
+                name = ((Run<?, ?>) context.getOwner().getExecutable()).getParent().getName();
+            } catch (IOException x) {
+                throw new AssertionError(x);
+            }
+            if (loaded.isEmpty()) {
+                await().until(ResumeCoordinator::getPending, is(4));
+            }
+            maxLoading.accumulateAndGet(ResumeCoordinator.getLoading(), Math::max);
+            loaded.add(name);
+        }
+    }
+}
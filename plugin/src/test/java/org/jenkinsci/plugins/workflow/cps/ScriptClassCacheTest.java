@@ -0,0 +1,162 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import groovy.lang.GroovyShell;
+import java.net.URL;
+import java.util.Map;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.BuildWatcher;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+public class ScriptClassCacheTest {
+
+    @ClassRule
+    public static BuildWatcher buildWatcher = new BuildWatcher();
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void clear() {
+        ScriptClassCache.clear();
+    }
+
+    @Test
+    public void reusedAcrossBuilds() throws Exception {
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(
+                "class Greeter { String greet(n) { \"hello ${n}\" } }\n"
+                        + "def names = ['a', 'b'].collect { it.toUpperCase() }\n"
+                        + "echo new Greeter().greet(names.join('+'))",
+                true));
+        WorkflowRun b1 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("hello A+B", b1);
+        assertThat(timings(b1), hasKey("parseCacheMiss"));
+        assertThat(timings(b1), not(hasKey("parseCacheHit")));
+        assertEquals(1, ScriptClassCache.size());
+        WorkflowRun b2 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("hello A+B", b2);
+        assertThat(timings(b2), hasKey("parseCacheHit"));
+        assertThat(timings(b2), not(hasKey("parseCacheMiss")));
+    }
+
+    @Test
+    public void sandboxIsPartOfKey() throws Exception {
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("echo 'hello'", true));
+        r.buildAndAssertSuccess(p);
+        p.setDefinition(new CpsFlowDefinition("echo 'hello'", false));
+        WorkflowRun b = r.buildAndAssertSuccess(p);
+        assertThat(timings(b), hasKey("parseCacheMiss"));
+        assertEquals(2, ScriptClassCache.size());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        int maxEntries = ScriptClassCache.MAX_ENTRIES;
+        ScriptClassCache.MAX_ENTRIES = 0;
+        try {
+            WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition("echo 'hello'", true));
+            r.buildAndAssertSuccess(p);
+            WorkflowRun b = r.buildAndAssertSuccess(p);
+            assertThat(timings(b), not(hasKey("parseCacheHit")));
+            assertEquals(0, ScriptClassCache.size());
+        } finally {
+            ScriptClassCache.MAX_ENTRIES = maxEntries;
+        }
+    }
+
+    @Test
+    public void decoratorsMustOptIn() throws Exception {
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("echo 'hello'", true));
+        r.buildAndAssertSuccess(p);
+        WorkflowRun b = r.buildAndAssertSuccess(p);
+        assertThat(timings(b), not(hasKey("parseCacheHit")));
+        assertEquals(0, ScriptClassCache.size());
+    }
+
+    @TestExtension("decoratorsMustOptIn")
+    public static final class OptedOut extends GroovyShellDecorator {
+        @Override
+        public void configureCompiler(@CheckForNull CpsFlowExecution context, CompilerConfiguration cc) {}
+    }
+
+    @Test
+    public void decoratorsNotAffectingCompilation() throws Exception {
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("echo 'hello'", true));
+        r.buildAndAssertSuccess(p);
+        WorkflowRun b = r.buildAndAssertSuccess(p);
+        assertThat(timings(b), hasKey("parseCacheHit"));
+    }
+
+    @TestExtension("decoratorsNotAffectingCompilation")
+    public static final class ShellOnly extends GroovyShellDecorator {
+        @Override
+        public void configureShell(@CheckForNull CpsFlowExecution context, GroovyShell shell) {
+            shell.setVariable("shellOnly", true);
+        }
+    }
+
+    @Test
+    public void classPathExtendedWhileCompiling() throws Exception {
+        LateLibrary.url = tmp.newFolder("lib").toURI().toURL();
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("echo 'hello'", true));
+        WorkflowRun b1 = r.buildAndAssertSuccess(p);
+        assertThat(timings(b1), hasKey("parseCacheMiss"));
+        assertEquals(0, ScriptClassCache.size());
+        WorkflowRun b2 = r.buildAndAssertSuccess(p);
+        assertThat(timings(b2), not(hasKey("parseCacheHit")));
+    }
+
+    /**
+     * Adds to the class path during compilation, as resolving {@code @Library} does.
+     */
+    @TestExtension("classPathExtendedWhileCompiling")
+    public static final class LateLibrary extends GroovyShellDecorator {
+        static URL url;
+
+        @Override
+        public String getCompilationFingerprint(@CheckForNull CpsFlowExecution context) {
+            return LateLibrary.class.getName();
+        }
+
+        @Override
+        public void configureCompiler(@CheckForNull CpsFlowExecution context, CompilerConfiguration cc) {
+            cc.addCompilationCustomizers(new CompilationCustomizer(CompilePhase.CONVERSION) {
+                @Override
+                public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) {
+                    source.getClassLoader().addURL(url);
+                }
+            });
+        }
+    }
+
+    private static Map<String, ?> timings(WorkflowRun b) {
+        return ((CpsFlowExecution) b.getExecution()).liveTimings;
+    }
+}
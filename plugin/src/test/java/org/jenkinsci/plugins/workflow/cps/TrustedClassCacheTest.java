@@ -0,0 +1,138 @@
+package org.jenkinsci.plugins.workflow.cps;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import groovy.lang.GroovyShell;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.BuildWatcher;
+import org.jvnet.hudson.test.FlagRule;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+public class TrustedClassCacheTest {
+
+    @ClassRule
+    public static BuildWatcher buildWatcher = new BuildWatcher();
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Rule
+    public FlagRule<Integer> maxTiers =
+            new FlagRule<>(() -> TrustedClassCache.MAX_TIERS, v -> TrustedClassCache.MAX_TIERS = v, 1);
+
+    @Test
+    public void sharedBetweenBuilds() throws Exception {
+        SharedLibrary.root = tmp.newFolder("lib");
+        writeLibrary("hello");
+        SharedLibrary.version = "1";
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(
+                "echo new pkg.Greeter().greet('world'); echo \"loaded=${pkg.Greeter.LOADED}\"", true));
+        WorkflowRun b1 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("hello world", b1);
+        WorkflowRun b2 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("hello world", b2);
+        assertEquals("same classes", loaded(b1), loaded(b2));
+        assertEquals("not compiled for a particular build", "null", SharedLibrary.compiledFor.get("pkg.Greeter"));
+        assertEquals(1, TrustedClassCache.size());
+        writeLibrary("goodbye");
+        SharedLibrary.version = "2";
+        WorkflowRun b3 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("goodbye world", b3);
+        assertNotEquals("new version", loaded(b1), loaded(b3));
+        // the tier for version 1 was closed once no build used it
+        await().until(TrustedClassCache::size, is(1));
+    }
+
+    private static void writeLibrary(String greeting) throws Exception {
+        File src = new File(SharedLibrary.root, "pkg/Greeter.groovy");
+        src.getParentFile().mkdirs();
+        Files.writeString(
+                src.toPath(),
+                "package pkg\n"
+                        + "class Greeter implements Serializable {\n"
+                        + "  static final long LOADED = System.nanoTime()\n"
+                        + "  String greet(String name) { '" + greeting + " ' + name }\n"
+                        + "}\n",
+                StandardCharsets.UTF_8);
+    }
+
+    private static String loaded(WorkflowRun b) throws Exception {
+        Matcher m = Pattern.compile("loaded=(\\d+)").matcher(JenkinsRule.getLog(b));
+        if (!m.find()) {
+            throw new AssertionError(JenkinsRule.getLog(b));
+        }
+        return m.group(1);
+    }
+
+    @TestExtension
+    public static final class SharedLibrary extends GroovyShellDecorator {
+        static File root;
+        static String version;
+        /** Execution passed to {@link #configureCompiler} when compiling each class. */
+        static final Map<String, String> compiledFor = new ConcurrentHashMap<>();
+
+        @Override
+        public GroovyShellDecorator forTrusted() {
+            return new GroovyShellDecorator() {
+                @Override
+                public String getCompilationFingerprint(@CheckForNull CpsFlowExecution context) {
+                    return SharedLibrary.class.getName();
+                }
+
+                @Override
+                public void configureCompiler(@CheckForNull CpsFlowExecution context, CompilerConfiguration cc) {
+                    cc.addCompilationCustomizers(new CompilationCustomizer(CompilePhase.CONVERSION) {
+                        @Override
+                        public void call(SourceUnit source, GeneratorContext generatorContext, ClassNode classNode) {
+                            compiledFor.put(classNode.getName(), String.valueOf(context));
+                        }
+                    });
+                }
+
+                @Override
+                public void configureShell(@CheckForNull CpsFlowExecution context, GroovyShell shell) {
+                    if (context == null || root == null) {
+                        return;
+                    }
+                    try {
+                        URL url = root.toURI().toURL();
+                        if (!TrustedClassCache.register(context, shell, "lib", version, url)) {
+                            shell.getClassLoader().addURL(url);
+                        }
+                    } catch (MalformedURLException x) {
+                        throw new AssertionError(x);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package org.jenkinsci.plugins.workflow.cps.steps;
 
+import static org.junit.Assert.assertEquals;
+
 import hudson.model.Result;
 import java.io.NotSerializableException;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
 import org.codehaus.groovy.control.MultipleCompilationErrorsException;
 import org.jenkinsci.plugins.workflow.cps.CpsCompilationErrorsException;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowExecution;
+import org.jenkinsci.plugins.workflow.cps.replay.ReplayAction;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.ClassRule;
@@ -74,4 +81,31 @@ public class LoadStepTest {
         r.assertLogContains(CpsCompilationErrorsException.class.getName(), b);
         r.assertLogContains("unexpected token: bad", b);
     }
+
+    @Test
+    public void identicalSourceReused() throws Exception {
+        WorkflowJob p = r.createProject(WorkflowJob.class);
+        r.jenkins.getWorkspaceFor(p).child("part.groovy").write("echo 'original part'", null);
+        r.jenkins.getWorkspaceFor(p).child("other.groovy").write("echo 'other part'", null);
+        String script = """
+                node {
+                  for (int i = 0; i < 3; i++) {
+                    load 'part.groovy'
+                  }
+                  load 'other.groovy'
+                  echo "evaluated ${evaluate('6 * 7')} ${evaluate('6 * 7')}"
+                }""";
+        p.setDefinition(new CpsFlowDefinition(script, true));
+        WorkflowRun b1 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("evaluated 42 42", b1);
+        assertEquals(
+                Set.of("Script1", "Script2", "Script3"),
+                ((CpsFlowExecution) b1.getExecution()).getLoadedScripts().keySet());
+        WorkflowRun b2 = (WorkflowRun) b1.getAction(ReplayAction.class)
+                .run(script, Map.of("Script1", "echo 'edited part'"), false)
+                .get();
+        r.assertBuildStatusSuccess(b2);
+        r.assertLogNotContains("original part", b2);
+        assertEquals(3, StringUtils.countMatches(JenkinsRule.getLog(b2), "edited part"));
+    }
 }